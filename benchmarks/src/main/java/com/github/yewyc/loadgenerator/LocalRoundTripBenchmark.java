@@ -0,0 +1,143 @@
+package com.github.yewyc.loadgenerator;
+
+import com.github.yewyc.httphandlers.HttpHandlers;
+import com.github.yewyc.stats.SequentialTimeSeriesRecorder;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalIoHandler;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request and its response through the whole client pipeline: the load generator, the HTTP codec and the recorder,
+ * against {@link HttpHandlers.DefaultHandler} over a {@link LocalChannel}. Without a socket, it is what a request
+ * costs the tool itself, and its allocations show with {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalRoundTripBenchmark {
+
+    private EventLoopGroup serverGroup;
+    private EventLoopGroup clientGroup;
+    private Channel serverChannel;
+    private Channel clientChannel;
+    private RoundTripGenerator generator;
+
+    /**
+     * Sends a request when the benchmark thread asks for one, and tells it when the response was recorded
+     */
+    static class RoundTripGenerator extends AbstractLoadGenerator {
+
+        private final Semaphore responses = new Semaphore(0);
+        private final Runnable sendTask = this::send;
+
+        RoundTripGenerator(URL urlBase, Channel channel) {
+            super(urlBase, channel);
+        }
+
+        @Override
+        protected void scheduleNextRequest() {
+        }
+
+        @Override
+        protected void onResponse() {
+            responses.release();
+        }
+
+        private void send() {
+            long now = System.nanoTime();
+            executeRequest(now, now);
+            flush();
+        }
+
+        void roundTrip() throws InterruptedException {
+            eventLoop.execute(sendTask);
+            responses.acquire();
+        }
+    }
+
+    @Setup
+    public void connect() throws Exception {
+        LocalAddress address = new LocalAddress("round-trip");
+        serverGroup = new MultiThreadIoEventLoopGroup(1, LocalIoHandler.newFactory());
+        clientGroup = new MultiThreadIoEventLoopGroup(1, LocalIoHandler.newFactory());
+        serverChannel = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel ch) {
+                        ChannelPipeline p = ch.pipeline();
+                        p.addLast(new HttpServerCodec());
+                        p.addLast(new HttpObjectAggregator(65536));
+                        p.addLast(new HttpHandlers.DefaultHandler(new DefaultChannelGroup(GlobalEventExecutor.INSTANCE), false));
+                    }
+                })
+                .bind(address).sync().channel();
+
+        URL url = URI.create("http://localhost/hello").toURL();
+        clientChannel = new Bootstrap()
+                .group(clientGroup)
+                .channel(LocalChannel.class)
+                .handler(new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel ch) {
+                        generator = new RoundTripGenerator(url, ch);
+                        ChannelPipeline p = ch.pipeline();
+                        p.addLast(generator.bytesReadCounter());
+                        p.addLast(generator.protocolHandlers());
+                        p.addLast(generator);
+                    }
+                })
+                .connect(address).sync().channel();
+
+        // the last second takes what comes after the first minute
+        SequentialTimeSeriesRecorder recorder = new SequentialTimeSeriesRecorder(Duration.ofMinutes(1));
+        clientChannel.eventLoop().submit(() -> recorder.start(System.nanoTime())).sync();
+        generator.prepare(Duration.ofDays(1), recorder).start();
+    }
+
+    @TearDown
+    public void close() throws InterruptedException {
+        clientChannel.close().sync();
+        serverChannel.close().sync();
+        clientGroup.shutdownGracefully().sync();
+        serverGroup.shutdownGracefully().sync();
+    }
+
+    @Benchmark
+    public void roundTrip() throws InterruptedException {
+        generator.roundTrip();
+    }
+}
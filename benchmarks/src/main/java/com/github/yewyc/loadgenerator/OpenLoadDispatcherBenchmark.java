@@ -0,0 +1,157 @@
+package com.github.yewyc.loadgenerator;
+
+import com.github.yewyc.benchmark.LoopbackServer;
+import com.github.yewyc.stats.SequentialTimeSeriesRecorder;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalIoHandler;
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The highest rate one event loop sustains with the open model. Its {@link OpenLoadDispatcher} sends a phase at each
+ * rate through its connections to the {@link LoopbackServer}, which has its own event loop, and the intended sends, the
+ * responses and the dropped sends are counted. The max rate of an event loop is the highest one whose responses are all
+ * of the intended sends, without drops.
+ * <p>
+ * {@code batch=1} is the baseline, the dispatcher before the batched send loop: a task and a flush per send. The default,
+ * {@code batch=128}, fires every due send of a wake-up and flushes once.
+ * <p>
+ * The score of {@link #phase} is only the phases per second: the counters, totals of the iterations, are the result.
+ * With fewer than 2 cores, the server takes its part of the CPU of the load generator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class OpenLoadDispatcherBenchmark {
+
+    private static final Duration PHASE = Duration.ofSeconds(1);
+
+    @Param({"25000", "50000", "100000", "200000"})
+    private int rate;
+
+    @Param({"16"})
+    private int connections;
+
+    @Param({"128", "1"})
+    private int batch;
+
+    private LoopbackServer server;
+    private EventLoopGroup group;
+    private EventLoop eventLoop;
+    private final List<Channel> channels = new ArrayList<>();
+    private final List<OpenLoadGenerator> generators = new ArrayList<>();
+    private long intendedSends;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Requests {
+
+        public long intended;
+        public long responses;
+        public long dropped;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            intended = 0;
+            responses = 0;
+            dropped = 0;
+        }
+    }
+
+    @Setup
+    public void connect() throws Exception {
+        server = new LoopbackServer(1);
+        group = new MultiThreadIoEventLoopGroup(1, LocalIoHandler.newFactory());
+        eventLoop = group.next();
+        URL url = URI.create("http://localhost/hello").toURL();
+        Bootstrap bootstrap = new Bootstrap()
+                .group(eventLoop)
+                .channel(LocalChannel.class)
+                .handler(new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel ch) {
+                        OpenLoadGenerator generator = new OpenLoadGenerator(url, ch);
+                        ChannelPipeline p = ch.pipeline();
+                        p.addLast(generator.bytesReadCounter());
+                        p.addLast(generator.protocolHandlers());
+                        p.addLast(generator);
+                    }
+                });
+        for (int i = 0; i < connections; i++) {
+            Channel channel = bootstrap.connect(server.address()).sync().channel();
+            channels.add(channel);
+            generators.add(channel.pipeline().get(OpenLoadGenerator.class));
+        }
+        // the intended times of the dispatcher, with the same arithmetic: the phase is over once they are all sent
+        double intervalNs = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+        for (double offset = 0; offset < PHASE.toNanos(); offset += intervalNs) {
+            intendedSends++;
+        }
+    }
+
+    @TearDown
+    public void close() throws InterruptedException {
+        for (Channel channel : channels) {
+            channel.close().sync();
+        }
+        group.shutdownGracefully().sync();
+        server.close();
+    }
+
+    /**
+     * A phase at the rate, until its last response
+     */
+    @Benchmark
+    public void phase(Requests requests) throws Exception {
+        SequentialTimeSeriesRecorder recorder = new SequentialTimeSeriesRecorder(PHASE);
+        eventLoop.submit(() -> recorder.start(System.nanoTime())).sync();
+        for (OpenLoadGenerator generator : generators) {
+            generator.prepare(Duration.ofDays(1), recorder).start();
+        }
+        OpenLoadDispatcher dispatcher = new OpenLoadDispatcher(eventLoop, generators, RateFunction.constant(rate), 1, ArrivalProcess.uniform().unitGaps(0), recorder, batch);
+        dispatcher.start(PHASE);
+        Thread.sleep(PHASE.toMillis());
+        while (!eventLoop.submit(() -> dispatcher.getIntended() >= intendedSends && generators.stream().noneMatch(AbstractLoadGenerator::hasInflightRequests)).get()) {
+            Thread.sleep(1);
+        }
+        eventLoop.submit(() -> {
+            requests.intended += dispatcher.getIntended();
+            for (Histogram histogram : recorder.getHistograms()) {
+                requests.responses += histogram.getTotalCount();
+            }
+            for (int dropped : recorder.getDropped()) {
+                requests.dropped += dropped;
+            }
+        }).sync();
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.yewyc.loadgenerator;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequestEncoder;
+import io.netty.handler.codec.http.HttpVersion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a send costs the event loop before the socket: the request written to the channel and flushed. The socket is
+ * an {@link EmbeddedChannel}, which only queues what is flushed.
+ * <p>
+ * {@link #encodeFullHttpRequest()} is the baseline: a request encoded by Netty for every send.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestWriteBenchmark {
+
+    private EmbeddedChannel channel;
+    private Http1Exchange exchange;
+    private EmbeddedChannel mixChannel;
+    private Http1Exchange mixExchange;
+    private RequestMix mix;
+    private final java.util.SplittableRandom random = new java.util.SplittableRandom(42);
+    private EmbeddedChannel encoderChannel;
+    private FullHttpRequest request;
+    private long id;
+
+    @Setup
+    public void channels() throws IOException {
+        URL url = URI.create("http://localhost:8080/hello").toURL();
+        channel = new EmbeddedChannel();
+        exchange = new Http1Exchange(new OpenLoadGenerator(url, channel), channel, url, RequestMix.get(url.getPath()), false, false);
+
+        File mixFile = File.createTempFile("mix", ".txt");
+        mixFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(mixFile)) {
+            writer.println("60 GET /hello");
+            writer.println("30 POST /orders -H \"Content-Type: application/json\" -d \"{\\\"id\\\": 1}\"");
+            writer.println("10 HEAD /hello");
+        }
+        mix = RequestMix.parse(mixFile);
+        Files.delete(mixFile.toPath());
+        mixChannel = new EmbeddedChannel();
+        mixExchange = new Http1Exchange(new OpenLoadGenerator(url, mixChannel), mixChannel, url, mix, false, false);
+
+        encoderChannel = new EmbeddedChannel(new HttpRequestEncoder());
+        request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, url.getPath(), Unpooled.EMPTY_BUFFER);
+        request.headers().set(HttpHeaderNames.HOST, url.getHost());
+        request.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+    }
+
+    @TearDown
+    public void close() {
+        channel.finishAndReleaseAll();
+        mixChannel.finishAndReleaseAll();
+        encoderChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void preEncoded() {
+        exchange.write(id++, 0, -1, 0, 0);
+        channel.flushOutbound();
+        channel.releaseOutbound();
+        // no response will come
+        exchange.clear();
+    }
+
+    /**
+     * The endpoint picked by weight, then its request written
+     */
+    @Benchmark
+    public void preEncodedMix() {
+        mixExchange.write(id++, mix.pick(random), -1, 0, 0);
+        mixChannel.flushOutbound();
+        mixChannel.releaseOutbound();
+        mixExchange.clear();
+    }
+
+    @Benchmark
+    public void encodeFullHttpRequest() {
+        encoderChannel.writeOutbound(request.retainedDuplicate());
+        encoderChannel.releaseOutbound();
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.yewyc.stats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the event loop pays per response to record it in the second buckets of its recorder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecorderBenchmark {
+
+    private static final int VALUES = 1024;
+
+    private SequentialTimeSeriesRecorder recorder;
+    // 100µs to 50ms, like the responses of a loaded server
+    private final long[] responseTimes = new long[VALUES];
+    private int index;
+
+    @Setup(Level.Trial)
+    public void values() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < VALUES; i++) {
+            responseTimes[i] = random.nextLong(TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void recorder() {
+        // an iteration stays in the buckets of the run, the last one takes what comes after it
+        recorder = new SequentialTimeSeriesRecorder(Duration.ofSeconds(10));
+        recorder.start(System.nanoTime());
+    }
+
+    @Benchmark
+    public void recordValue() {
+        long responseTime = responseTimes[index++ & (VALUES - 1)];
+        recorder.recordValue(System.nanoTime(), responseTime, responseTime / 2, responseTime / 4, true);
+    }
+
+    /**
+     * The whole response of AbstractLoadGenerator.responseCompleted
+     */
+    @Benchmark
+    public void recordResponse() {
+        long now = System.nanoTime();
+        long responseTime = responseTimes[index++ & (VALUES - 1)];
+        recorder.recordValue(now, responseTime, responseTime / 2, responseTime / 4, true);
+        recorder.recordBytes(now, 120);
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.yewyc.stats;
+
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.yewyc.stats.Statistic.highestTrackableValue;
+import static com.github.yewyc.stats.Statistic.numberOfSignificantValueDigits;
+
+/**
+ * The work after a phase: merging the per second histograms of every recorder, then the report of the phase.
+ * <p>
+ * The recorders share a few distinct histograms: a merge costs the same, and thousands of them fit in the heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class StatisticConverterBenchmark {
+
+    private static final int DISTINCT_HISTOGRAMS = 16;
+
+    @Param({"16", "1000"})
+    private int recorders;
+
+    @Param({"60"})
+    private int seconds;
+
+    private List<Statistic> stats;
+    private List<StatisticTick> ticks;
+
+    @Setup
+    public void statistics() {
+        SplittableRandom random = new SplittableRandom(42);
+        Histogram[] histograms = new Histogram[DISTINCT_HISTOGRAMS];
+        for (int i = 0; i < DISTINCT_HISTOGRAMS; i++) {
+            // like the recorder
+            histograms[i] = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+            histograms[i].setAutoResize(true);
+            for (int v = 0; v < 10_000; v++) {
+                histograms[i].recordValue(random.nextLong(TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(50)));
+            }
+        }
+        stats = new ArrayList<>();
+        for (int r = 0; r < recorders; r++) {
+            List<Histogram> perSecond = new ArrayList<>();
+            List<Integer> counters = new ArrayList<>();
+            List<Long> bytes = new ArrayList<>();
+            for (int s = 0; s < seconds; s++) {
+                perSecond.add(histograms[(r + s) % DISTINCT_HISTOGRAMS]);
+                counters.add(0);
+                bytes.add(1_200_000L);
+            }
+            stats.add(new Statistic(perSecond, perSecond, perSecond, counters, counters, counters, bytes));
+        }
+        ticks = StatisticConverter.convert(stats);
+    }
+
+    @Benchmark
+    public List<StatisticTick> convert() {
+        return StatisticConverter.convert(stats);
+    }
+
+    /**
+     * What the report, then the plot, read of a new phase
+     */
+    @Benchmark
+    public double report() {
+        StatisticPhase phase = new StatisticPhase("test", Duration.ofSeconds(seconds), ticks);
+        double report = phase.getThroughput().mean + phase.getLatency().mean + phase.getServiceTime().mean + phase.getFirstByte().mean;
+        return report + phase.getThroughput().mean + phase.getLatency().mean;
+    }
+}
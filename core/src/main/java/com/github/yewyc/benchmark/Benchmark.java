@@ -13,14 +13,31 @@ public class Benchmark implements Closeable {
     private final BenchmarkRecord record;
 
     private final List<StatisticPhase> statistics = new ArrayList<>();
+    private final List<ProgressListener> progressListeners = new ArrayList<>();
+    private final TlsHandshakes tlsHandshakes = new TlsHandshakes();
 
     public Benchmark(BenchmarkRecord record) {
         this.record = record;
     }
 
+    /**
+     * Called every second while a phase is running
+     */
+    public Benchmark progress(ProgressListener listener) {
+        this.progressListeners.add(listener);
+        return this;
+    }
+
     public Benchmark start() {
-        BenchmarkRun r = new BenchmarkRun();
-        this.statistics.addAll(r.run(this.record));
+        return start(PhasePlanner.of(this.record.plan()));
+    }
+
+    /**
+     * Runs the phases chosen by the planner instead of the plan of the record
+     */
+    public Benchmark start(PhasePlanner planner) {
+        BenchmarkRun r = new BenchmarkRun(this.progressListeners, this.tlsHandshakes);
+        this.statistics.addAll(r.run(this.record, planner));
         return this;
     }
 
@@ -43,6 +60,13 @@ public class Benchmark implements Closeable {
     public void close() {
     }
 
+    /**
+     * @return the handshakes of the https connections, empty otherwise
+     */
+    public TlsHandshakes getTlsHandshakes() {
+        return tlsHandshakes;
+    }
+
     public BenchmarkRecord getRecord() {
         return record;
     }
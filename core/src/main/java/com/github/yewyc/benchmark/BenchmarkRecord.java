@@ -1,8 +1,14 @@
 package com.github.yewyc.benchmark;
 
+import com.github.yewyc.loadgenerator.ArrivalProcess;
 import com.github.yewyc.loadgenerator.LoadStrategy;
+import com.github.yewyc.loadgenerator.Protocol;
+import com.github.yewyc.loadgenerator.RequestMix;
 
+import java.net.URI;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Immutable record representing benchmark configuration parameters.
@@ -14,6 +20,18 @@ import java.time.Duration;
  * @param urlBase Base URL to benchmark against
  * @param warmUpDuration Duration of the warm-up phase (can be null)
  * @param timeout Timeout for read/write operations (can be null)
+ * @param mode Load model
+ * @param transport Netty transport of the load generator. Falls back to nio when it is not available. local connects to
+ *                  the test server in the same JVM, over plain HTTP.
+ * @param arrival Spacing of the intended sends. Only used by the open model.
+ * @param phases Phases to run instead of the warm-up and the test at a constant rate (can be empty)
+ * @param pipeline Requests a connection keeps waiting for a response. Ignored by the open model, which never holds an
+ *                 intended send back. With HTTP/2, the concurrent streams of a connection.
+ * @param protocol HTTP version of the connections
+ * @param tlsEngine TLS implementation of an https urlBase. Falls back to jdk when it is not available.
+ * @param tlsSessionResumption Whether a connection resumes the TLS session of the previous one instead of a full
+ *                             handshake
+ * @param requestMix Requests to send, picked by weight (can be null: every request is a GET of the urlBase)
  */
 public record BenchmarkRecord(
     int threads,
@@ -23,8 +41,25 @@ public record BenchmarkRecord(
     String urlBase,
     Duration warmUpDuration,
     Duration timeout,
-    LoadStrategy mode
+    LoadStrategy mode,
+    Transport transport,
+    ArrivalProcess arrival,
+    List<Phase> phases,
+    int pipeline,
+    Protocol protocol,
+    TlsEngine tlsEngine,
+    boolean tlsSessionResumption,
+    RequestMix requestMix
 ) {
+
+    /**
+     * The nio transport, uniform arrivals, the warm-up and the test at a constant rate, one request in flight per
+     * HTTP/1.1 connection, the jdk TLS engine without resumption and a GET of the urlBase. The with methods change the
+     * rest.
+     */
+    public BenchmarkRecord(int threads, Duration duration, int rate, int connections, String urlBase, Duration warmUpDuration, Duration timeout, LoadStrategy mode) {
+        this(threads, duration, rate, connections, urlBase, warmUpDuration, timeout, mode, Transport.nio, ArrivalProcess.uniform(), List.of(), 1, Protocol.http1, TlsEngine.jdk, false, null);
+    }
     
     /**
      * Compact constructor with validation
@@ -51,8 +86,79 @@ public record BenchmarkRecord(
         if (mode == null) {
             throw new IllegalArgumentException("mode must not be null or blank");
         }
+        if (transport == null) {
+            throw new IllegalArgumentException("transport must not be null");
+        }
+        if (arrival == null) {
+            throw new IllegalArgumentException("arrival must not be null");
+        }
+        if (phases == null) {
+            throw new IllegalArgumentException("phases must not be null");
+        }
+        phases = List.copyOf(phases);
+        if (pipeline < 1) {
+            throw new IllegalArgumentException("pipeline must be at least 1, got: " + pipeline);
+        }
+        if (protocol == null) {
+            throw new IllegalArgumentException("protocol must not be null");
+        }
+        if (tlsEngine == null) {
+            throw new IllegalArgumentException("tlsEngine must not be null");
+        }
+        if (transport == Transport.local && urlBase.startsWith("https://")) {
+            throw new IllegalArgumentException("the local transport has no TLS, got: " + urlBase);
+        }
     }
     
+    /**
+     * @return the same benchmark over the transport
+     */
+    public BenchmarkRecord withTransport(Transport transport) {
+        return new BenchmarkRecord(threads, duration, rate, connections, urlBase, warmUpDuration, timeout, mode, transport, arrival, phases, pipeline, protocol, tlsEngine, tlsSessionResumption, requestMix);
+    }
+
+    /**
+     * @return the same benchmark with the spacing of the intended sends
+     */
+    public BenchmarkRecord withArrival(ArrivalProcess arrival) {
+        return new BenchmarkRecord(threads, duration, rate, connections, urlBase, warmUpDuration, timeout, mode, transport, arrival, phases, pipeline, protocol, tlsEngine, tlsSessionResumption, requestMix);
+    }
+
+    /**
+     * @return the same benchmark running the phases instead of the warm-up and the test
+     */
+    public BenchmarkRecord withPhases(List<Phase> phases) {
+        return new BenchmarkRecord(threads, duration, rate, connections, urlBase, warmUpDuration, timeout, mode, transport, arrival, phases, pipeline, protocol, tlsEngine, tlsSessionResumption, requestMix);
+    }
+
+    /**
+     * @return the same benchmark with that many requests in flight per connection
+     */
+    public BenchmarkRecord withPipeline(int pipeline) {
+        return new BenchmarkRecord(threads, duration, rate, connections, urlBase, warmUpDuration, timeout, mode, transport, arrival, phases, pipeline, protocol, tlsEngine, tlsSessionResumption, requestMix);
+    }
+
+    /**
+     * @return the same benchmark over the HTTP version
+     */
+    public BenchmarkRecord withProtocol(Protocol protocol) {
+        return new BenchmarkRecord(threads, duration, rate, connections, urlBase, warmUpDuration, timeout, mode, transport, arrival, phases, pipeline, protocol, tlsEngine, tlsSessionResumption, requestMix);
+    }
+
+    /**
+     * @return the same benchmark with the TLS engine and session resumption of an https urlBase
+     */
+    public BenchmarkRecord withTls(TlsEngine tlsEngine, boolean tlsSessionResumption) {
+        return new BenchmarkRecord(threads, duration, rate, connections, urlBase, warmUpDuration, timeout, mode, transport, arrival, phases, pipeline, protocol, tlsEngine, tlsSessionResumption, requestMix);
+    }
+
+    /**
+     * @return the same benchmark sending the requests of the mix
+     */
+    public BenchmarkRecord withRequestMix(RequestMix requestMix) {
+        return new BenchmarkRecord(threads, duration, rate, connections, urlBase, warmUpDuration, timeout, mode, transport, arrival, phases, pipeline, protocol, tlsEngine, tlsSessionResumption, requestMix);
+    }
+
     /**
      * Returns true if warm-up phase is configured
      */
@@ -60,6 +166,57 @@ public record BenchmarkRecord(
         return warmUpDuration != null && !warmUpDuration.isZero();
     }
     
+    /**
+     * Returns the phases to run: the configured ones, or the warm-up and the test at the constant rate
+     */
+    public List<Phase> plan() {
+        if (!phases.isEmpty()) {
+            return phases;
+        }
+        List<Phase> plan = new ArrayList<>();
+        if (hasWarmUp()) {
+            plan.add(Phase.constant("warm-up", warmUpDuration, rate));
+        }
+        plan.add(Phase.constant("test", duration, rate));
+        return plan;
+    }
+
+    /**
+     * Returns the part of a distributed run for one load generator: some of the connections, and the rate of every
+     * phase in proportion to them
+     */
+    public BenchmarkRecord share(int connections) {
+        double share = (double) connections / this.connections;
+        List<Phase> scaled = new ArrayList<>();
+        for (Phase phase : plan()) {
+            scaled.add(phase.scaled(share));
+        }
+        return new BenchmarkRecord(threads, duration, rate, connections, urlBase, warmUpDuration, timeout, mode, transport, arrival, scaled, pipeline, protocol, tlsEngine, tlsSessionResumption, requestMix);
+    }
+
+    /**
+     * Returns the same connections and requests against the test server in this JVM, with the closed model so they go
+     * as fast as the load generator can send them. An https urlBase becomes http.
+     */
+    public BenchmarkRecord loopback(Duration duration) {
+        String path = URI.create(urlBase).getRawPath();
+        return new BenchmarkRecord(threads, duration, 0, connections, "http://localhost" + path, null, timeout, LoadStrategy.wrk, Transport.local, arrival, List.of(Phase.constant("calibration", duration, 0)), pipeline, protocol, tlsEngine, false, requestMix);
+    }
+
+    /**
+     * Returns the requests to send: the mix, or a GET of the urlBase
+     */
+    public RequestMix requests() {
+        return requestMix != null ? requestMix : RequestMix.get(URI.create(urlBase).getPath());
+    }
+
+    /**
+     * Returns true if the connections are https
+     */
+    public boolean isTls() {
+        return urlBase.startsWith("https://");
+    }
+
     /**
      * Returns true if timeout is configured
      */
@@ -1,12 +1,17 @@
 package com.github.yewyc.benchmark;
 
 import com.github.yewyc.loadgenerator.AbstractLoadGenerator;
+import com.github.yewyc.loadgenerator.HiccupProbe;
 import com.github.yewyc.loadgenerator.LoadStrategy;
+import com.github.yewyc.loadgenerator.OpenLoadDispatcher;
 import com.github.yewyc.loadgenerator.OpenLoadGenerator;
+import com.github.yewyc.loadgenerator.RequestMix;
 import com.github.yewyc.loadgenerator.ClosedLoadGenerator;
 import com.github.yewyc.loadgenerator.SemiOpenLoadGenerator;
+import com.github.yewyc.stats.SequentialTimeSeriesRecorder;
 import com.github.yewyc.stats.Statistic;
 import com.github.yewyc.stats.StatisticConverter;
+import com.github.yewyc.stats.StatisticEndpoint;
 import com.github.yewyc.stats.StatisticPhase;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
@@ -14,12 +19,9 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.http.HttpClientCodec;
-import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
 import org.slf4j.Logger;
@@ -30,14 +32,59 @@ import java.net.URI;
 import java.net.URL;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class BenchmarkRun {
 
     private static final Logger log = LoggerFactory.getLogger(BenchmarkRun.class);
 
+    private final List<ProgressListener> progressListeners;
+    private final TlsHandshakes tlsHandshakes;
+    private final LoopbackServer loopbackServer;
+    private final Map<EventLoop, SequentialTimeSeriesRecorder> reusableRecorders = new HashMap<>();
+    private final ScheduledExecutorService reporterExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "progress-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BenchmarkRun() {
+        this(List.of());
+    }
+
+    public BenchmarkRun(List<ProgressListener> progressListeners) {
+        this(progressListeners, new TlsHandshakes());
+    }
+
+    /**
+     * @param tlsHandshakes records the handshakes of the https connections
+     */
+    public BenchmarkRun(List<ProgressListener> progressListeners, TlsHandshakes tlsHandshakes) {
+        this(progressListeners, tlsHandshakes, null);
+    }
+
+    /**
+     * @param loopbackServer answers the connections of the local transport, and stays open after the run (can be null:
+     *                       the run starts its own)
+     */
+    public BenchmarkRun(List<ProgressListener> progressListeners, TlsHandshakes tlsHandshakes, LoopbackServer loopbackServer) {
+        this.progressListeners = progressListeners;
+        this.tlsHandshakes = tlsHandshakes;
+        this.loopbackServer = loopbackServer;
+    }
+
     public List<StatisticPhase> run(BenchmarkRecord record) {
+        return run(record, PhasePlanner.of(record.plan()));
+    }
+
+    public List<StatisticPhase> run(BenchmarkRecord record, PhasePlanner planner) {
 
         URL urlBase;
         try {
@@ -45,34 +92,77 @@ public class BenchmarkRun {
         } catch (MalformedURLException e) {
             throw new RuntimeException(e);
         }
+        String host = urlBase.getHost();
+        int port = urlBase.getPort() == -1 ? urlBase.getDefaultPort() : urlBase.getPort();
+        TlsConnections tls = record.isTls() ? new TlsConnections(record, host, port, tlsHandshakes) : null;
+        RequestMix mix = record.requests();
+        // the connections split their stream from it. With -Dseed, they pick the same endpoints and bodies on each run
+        Long seed = Long.getLong("seed");
+        SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
 
         List<StatisticPhase> statistics = new ArrayList<>();
 
-        long intervalNs;
         if (record.mode().equals(LoadStrategy.wrk)) {
-            intervalNs = 0;
             log.info("Benchmark initialization with a closed model");
         } else {
-            double requestsPerSecondPerConnection = record.requestsPerSecondPerConnection();
-            intervalNs = (long) (Duration.ofSeconds(1).toNanos() / requestsPerSecondPerConnection);
-            log.info("Benchmark initialization with an open model. requests_per_second_per_connection=" + requestsPerSecondPerConnection + ", max_requests_warmup_phase=" + (record.expectedWarmUpRequests()) + ", max_requests_test_phase=" + (record.expectedTestRequests()));
+            log.info("Benchmark initialization with an open model");
         }
 
-        EventLoopGroup group = new NioEventLoopGroup(record.threads());
+        Transport transport = record.transport().orFallback();
+        log.info("Using the transport " + transport);
+        EventLoopGroup group = new MultiThreadIoEventLoopGroup(record.threads(), transport.ioHandlerFactory());
+        LoopbackServer ownLoopbackServer = null;
         try {
+            LoopbackServer loopback = null;
+            if (transport == Transport.local) {
+                loopback = loopbackServer;
+                if (loopback == null) {
+                    ownLoopbackServer = loopback = new LoopbackServer(record.threads());
+                }
+                log.info("Connecting to the test server in this JVM, the host and port of " + urlBase + " are ignored");
+            }
             Bootstrap b = new Bootstrap();
-            b.group(group).channel(NioSocketChannel.class)
-                    .handler(new ChannelInitializer<SocketChannel>() {
+            b.group(group).channel(transport.channelClass())
+                    .handler(new ChannelInitializer<Channel>() {
                         @Override
-                        protected void initChannel(SocketChannel ch) {
+                        protected void initChannel(Channel ch) {
 
                             ChannelPipeline p = ch.pipeline();
 
+                            SplittableRandom connectionRandom;
+                            // the channels are initialized on their own event loop
+                            synchronized (random) {
+                                connectionRandom = random.split();
+                            }
+                            AbstractLoadGenerator runHandler;
+                            if (record.mode().equals(LoadStrategy.wrk)) {
+                                runHandler = new ClosedLoadGenerator(urlBase, ch.read(), record.pipeline(), record.protocol(), mix, connectionRandom);
+                            } else if (record.mode().equals(LoadStrategy.wrk2)) {
+                                runHandler = new SemiOpenLoadGenerator(urlBase, ch.read(), record.pipeline(), record.protocol(), mix, connectionRandom);
+                            } else if (record.mode().equals(LoadStrategy.wrk3)) {
+                                runHandler = new OpenLoadGenerator(urlBase, ch.read(), record.protocol(), mix, connectionRandom);
+                            } else {
+                                throw new IllegalStateException();
+                            }
+
                             if (record.hasTimeout()) {
-                                p.addLast(new ReadTimeoutHandler(record.timeout().toSeconds(), TimeUnit.SECONDS));
+                                p.addLast(new ReadTimeoutHandler(record.timeout().toSeconds(), TimeUnit.SECONDS) {
+                                    @Override
+                                    protected void readTimedOut(ChannelHandlerContext ctx) throws Exception {
+                                        // an idle connection, e.g. waiting for the start of a distributed run, has not timed out
+                                        AbstractLoadGenerator generator = (AbstractLoadGenerator) ctx.pipeline().get("run-handler");
+                                        if (generator == null || generator.hasInflightRequests()) {
+                                            super.readTimedOut(ctx);
+                                        }
+                                    }
+                                });
                                 p.addLast(new WriteTimeoutHandler(record.timeout().toSeconds(), TimeUnit.SECONDS));
                             }
 
+                            if (tls != null) {
+                                tls.addHandlers(ch);
+                            }
+
                             // Monitor open and close connections
                             p.addLast(new ChannelInboundHandlerAdapter() {
                                 @Override
@@ -88,8 +178,10 @@ public class BenchmarkRun {
                                 }
                             });
 
-                            p.addLast(new HttpClientCodec());
-                            p.addLast(new HttpObjectAggregator(1024 * 1024));
+                            // the bytes of the responses, decrypted but not yet decoded
+                            p.addLast(runHandler.bytesReadCounter());
+                            // no aggregator: the generator reads the response in pieces and drops the body
+                            p.addLast(runHandler.protocolHandlers());
 
                             // Monitor In-flight HTTP requests that haven't completed yet during shutdown
                             p.addLast(new ChannelInboundHandlerAdapter() {
@@ -104,83 +196,145 @@ public class BenchmarkRun {
                                 }
                             });
 
-                            if (record.mode().equals(LoadStrategy.wrk)) {
-                                p.addLast("run-handler", new ClosedLoadGenerator(urlBase, ch.read()));
-                            } else if (record.mode().equals(LoadStrategy.wrk2)) {
-                                p.addLast("run-handler", new SemiOpenLoadGenerator(urlBase, ch.read(), intervalNs));
-                            } else if (record.mode().equals(LoadStrategy.wrk3)) {
-                                p.addLast("run-handler", new OpenLoadGenerator(urlBase, ch.read(), intervalNs));
-                            } else {
-                                throw new IllegalStateException();
-                            }
+                            p.addLast("run-handler", runHandler);
                         }
                     });
 
             List<Channel> channels = new ArrayList<>();
             for (int i = 0; i < record.connections(); i++) {
-                Channel channel = b.connect(urlBase.getHost(), urlBase.getPort()).sync().channel();
+                Channel channel = (loopback != null ? b.connect(loopback.address()) : b.connect(host, port)).sync().channel();
+                if (tls != null) {
+                    tls.awaitHandshake(channel);
+                }
                 channels.add(channel);
             }
-            if (record.hasWarmUp()) {
-                statistics.add(runWarmupPhase(channels, "warm-up", record.warmUpDuration()));
+            // back-to-back on the same connections
+            Phase phase;
+            while ((phase = planner.next(statistics)) != null) {
+                statistics.add(runPhase(record, channels, phase));
             }
-            statistics.add(runTestPhase(channels, "test", record.duration()));
 
             group.shutdownGracefully();
             group.terminationFuture().sync();
 
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
+        } finally {
+            reporterExecutor.shutdownNow();
+            if (ownLoopbackServer != null) {
+                ownLoopbackServer.close();
+            }
         }
         log.info("Benchmark finished");
 
         return statistics;
     }
 
-    private StatisticPhase runWarmupPhase(List<Channel> channels, String name, Duration duration) throws InterruptedException {
-        return this.runPhase(channels, name, duration);
-    }
-
-    private StatisticPhase runTestPhase(List<Channel> channels, String name, Duration duration) throws InterruptedException {
-        return this.runPhase(channels, name, duration);
+    /*
+     * The recorder of the previous phase when it has the same duration, so the phases of a capacity search don't
+     * allocate their histograms again
+     */
+    private SequentialTimeSeriesRecorder recorder(EventLoop eventLoop, Duration duration) {
+        SequentialTimeSeriesRecorder recorder = reusableRecorders.get(eventLoop);
+        if (recorder == null || recorder.seconds() != duration.toSeconds()) {
+            recorder = new SequentialTimeSeriesRecorder(duration);
+            reusableRecorders.put(eventLoop, recorder);
+        }
+        return recorder;
     }
 
     /*
      * runPhase has block operations
      */
-    private StatisticPhase runPhase(List<Channel> channels, String name, Duration duration) throws InterruptedException {
+    private StatisticPhase runPhase(BenchmarkRecord record, List<Channel> channels, Phase phase) throws InterruptedException {
+        String name = phase.name();
+        Duration duration = phase.duration();
         List<AbstractLoadGenerator> listeners = new ArrayList<>();
         channels.forEach(ch -> {
             AbstractLoadGenerator handler = (AbstractLoadGenerator) ch.pipeline().get("run-handler");
-            listeners.add(handler);
+            // the handlers are removed when the channel is closed, e.g. by a read timeout in the previous phase
+            if (handler == null) {
+                log.warn("Skipping closed connection: " + ch);
+            } else {
+                listeners.add(handler);
+            }
         });
+        if (listeners.isEmpty()) {
+            throw new IllegalStateException("All the connections are closed");
+        }
+        // one recorder per event loop, shared by its connections
+        Map<EventLoop, SequentialTimeSeriesRecorder> recorders = new LinkedHashMap<>();
+        for (AbstractLoadGenerator listener : listeners) {
+            SequentialTimeSeriesRecorder recorder = recorders.computeIfAbsent(listener.getEventLoop(), eventLoop -> recorder(eventLoop, duration));
+            listener.prepare(duration, recorder);
+            if (listener instanceof SemiOpenLoadGenerator semiOpen) {
+                semiOpen.schedule(phase.rate(), listeners.size());
+            }
+        }
+        // open model: one schedule per event loop, at the share of the rate of its connections
+        Map<EventLoop, OpenLoadDispatcher> dispatchers = new LinkedHashMap<>();
+        if (record.mode().equals(LoadStrategy.wrk3)) {
+            Map<EventLoop, List<OpenLoadGenerator>> connectionsPerEventLoop = new LinkedHashMap<>();
+            for (AbstractLoadGenerator listener : listeners) {
+                connectionsPerEventLoop.computeIfAbsent(listener.getEventLoop(), eventLoop -> new ArrayList<>()).add((OpenLoadGenerator) listener);
+            }
+            connectionsPerEventLoop.forEach((eventLoop, connections) -> {
+                double share = (double) connections.size() / listeners.size();
+                dispatchers.put(eventLoop, new OpenLoadDispatcher(eventLoop, connections, phase.rate(), share, record.arrival().unitGaps(dispatchers.size()), recorders.get(eventLoop)));
+            });
+        }
         log.info("Starting the phase: " + name);
         long start = System.nanoTime();
         long end = -1;
-        listeners.forEach(h -> h.prepare(duration));
+        // the event loop runs the tasks in order, so the recorder is started before its connections
+        recorders.forEach((eventLoop, recorder) -> eventLoop.execute(() -> recorder.start(System.nanoTime())));
+        List<HiccupProbe> probes = new ArrayList<>();
+        recorders.forEach((eventLoop, recorder) -> probes.add(new HiccupProbe(eventLoop, recorder)));
+        probes.forEach(probe -> probe.start(duration));
         listeners.forEach(AbstractLoadGenerator::start);
-        Thread.sleep(duration);
-        boolean requestsCompleted = false;
-        while (!requestsCompleted) {
-            int completedRequests = 0;
-            for (AbstractLoadGenerator handler : listeners) {
-                if (!handler.hasInflightRequests()) {
-                    completedRequests++;
-                    end = Math.max(end, handler.getEnd());
+        dispatchers.values().forEach(dispatcher -> dispatcher.start(duration));
+        try (ProgressReporter progressReporter = new ProgressReporter(name, recorders, progressListeners)) {
+            progressReporter.start(reporterExecutor);
+            Thread.sleep(duration);
+            boolean requestsCompleted = false;
+            while (!requestsCompleted) {
+                int completedRequests = 0;
+                for (AbstractLoadGenerator handler : listeners) {
+                    if (!handler.hasInflightRequests()) {
+                        completedRequests++;
+                        end = Math.max(end, handler.getEnd());
+                    }
+                }
+                if (completedRequests == listeners.size()) {
+                    requestsCompleted = true;
+                } else {
+                    Thread.sleep(1);
                 }
-            }
-            if (completedRequests == listeners.size()) {
-                requestsCompleted = true;
-            } else {
-                Thread.sleep(1);
             }
         }
 
+        probes.forEach(HiccupProbe::stop);
         List<Statistic> stats = new ArrayList<>();
-        for (AbstractLoadGenerator listener : listeners) {
-            stats.add(listener.collectStatistics());
+        for (Map.Entry<EventLoop, SequentialTimeSeriesRecorder> entry : recorders.entrySet()) {
+            // read it from the event loop that wrote it
+            stats.add(entry.getKey().submit(entry.getValue()::collectStatistics).sync().getNow());
+        }
+        double targetRate = 0;
+        double achievedRate = 0;
+        if (!dispatchers.isEmpty()) {
+            long intended = 0;
+            long sent = 0;
+            for (Map.Entry<EventLoop, OpenLoadDispatcher> entry : dispatchers.entrySet()) {
+                intended += entry.getKey().submit(entry.getValue()::getIntended).sync().getNow();
+                sent += entry.getKey().submit(entry.getValue()::getSent).sync().getNow();
+            }
+            targetRate = phase.rate().averageRate(duration);
+            achievedRate = sent / (duration.toNanos() / 1_000_000_000.0);
+            log.info("Phase " + name + ": target_rate=" + targetRate + ", achieved_rate=" + achievedRate + ", intended_requests=" + intended + ", sent_requests=" + sent);
         }
         log.info("Finished the phase: " + name);
-        return new StatisticPhase(name, Duration.ofNanos(end - start), StatisticConverter.convert(stats));
+        RequestMix mix = record.requests();
+        List<StatisticEndpoint> endpoints = mix.size() > 1 ? StatisticConverter.convertEndpoints(stats, mix.names()) : List.of();
+        return new StatisticPhase(name, Duration.ofNanos(end - start), StatisticConverter.convert(stats), targetRate, achievedRate, endpoints);
     }
 }
@@ -0,0 +1,79 @@
+package com.github.yewyc.benchmark;
+
+import com.github.yewyc.stats.StatisticPhase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The ceiling of the load generator on this machine: the connections and requests of a run, sent as fast as it can
+ * against the test server in the same JVM, without sockets ({@link Transport#local}). A run whose throughput gets
+ * close to it measures the load generator as much as the server.
+ * <p>
+ * The CPU time is the one of the whole process but the loopback server: the event loops of the load generator, and
+ * its GC and JIT.
+ *
+ * @param requests responses of the calibration
+ * @param duration of the calibration
+ * @param cpuTime of the load generator during the calibration, in nanoseconds. -1 when the JVM doesn't report the CPU
+ *                time of the process.
+ */
+public record Calibration(long requests, Duration duration, long cpuTime) {
+
+    private static final Logger log = LoggerFactory.getLogger(Calibration.class);
+
+    public Calibration {
+        if (duration == null) {
+            throw new IllegalArgumentException("duration must not be null");
+        }
+    }
+
+    /**
+     * @param warmUpDuration a first run that is not measured, so the JIT compiled the load generator and the server
+     *                       (can be null)
+     */
+    public static Calibration measure(BenchmarkRecord record, Duration warmUpDuration, Duration duration) {
+        try (LoopbackServer server = new LoopbackServer(record.threads())) {
+            if (warmUpDuration != null && !warmUpDuration.isZero()) {
+                log.info("Warming up the calibration for " + warmUpDuration.toSeconds() + "s");
+                new BenchmarkRun(List.of(), new TlsHandshakes(), server).run(record.loopback(warmUpDuration));
+            }
+            log.info("Calibrating the load generator for " + duration.toSeconds() + "s in this JVM");
+            long processCpuTime = processCpuTime();
+            long serverCpuTime = server.cpuTime();
+            List<StatisticPhase> phases = new BenchmarkRun(List.of(), new TlsHandshakes(), server).run(record.loopback(duration));
+            long cpuTime = -1;
+            if (processCpuTime >= 0) {
+                cpuTime = (processCpuTime() - processCpuTime) - (server.cpuTime() - serverCpuTime);
+            }
+            StatisticPhase calibration = phases.get(0);
+            return new Calibration(calibration.getThroughput().totalSum, calibration.duration(), cpuTime);
+        }
+    }
+
+    private static long processCpuTime() {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean hotspot) {
+            return hotspot.getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * @return the highest throughput of the load generator with these connections and requests
+     */
+    public double requestsPerSecond() {
+        return duration.isZero() ? 0 : requests / (duration.toNanos() / 1_000_000_000.0);
+    }
+
+    /**
+     * @return the CPU time the load generator spends on a request, in nanoseconds. NaN when it is not known.
+     */
+    public double cpuTimePerRequest() {
+        return cpuTime < 0 || requests == 0 ? Double.NaN : (double) cpuTime / requests;
+    }
+}
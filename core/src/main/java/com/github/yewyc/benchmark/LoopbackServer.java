@@ -0,0 +1,84 @@
+package com.github.yewyc.benchmark;
+
+import com.github.yewyc.httphandlers.HttpHandlers;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalIoHandler;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The test server in the JVM of the load generator, for the {@link Transport#local} transport: the {@link HttpHandlers}
+ * of the socket server, on {@link LocalChannel}s instead of sockets. A request costs no syscall and no copy, and the
+ * server answers as fast as its event loops run. Every path is answered like /hello, so a request mix can target any.
+ */
+public class LoopbackServer implements Closeable {
+
+    private final EventLoopGroup group;
+    private final Channel serverChannel;
+    // closed by /fullGC
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+
+    /**
+     * @param threads event loops of the server
+     */
+    public LoopbackServer(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be greater than 0, got: " + threads);
+        }
+        this.group = new MultiThreadIoEventLoopGroup(threads, new DefaultThreadFactory("loopback-server"), LocalIoHandler.newFactory());
+        try {
+            this.serverChannel = new ServerBootstrap()
+                    .group(group)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        protected void initChannel(LocalChannel ch) {
+                            channels.add(ch);
+                            HttpHandlers.addHttpHandlers(ch.pipeline(), channels, true);
+                        }
+                    })
+                    .bind(new LocalAddress(LoopbackServer.class)).sync().channel();
+        } catch (InterruptedException e) {
+            group.shutdownGracefully();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public LocalAddress address() {
+        return (LocalAddress) serverChannel.localAddress();
+    }
+
+    /**
+     * @return the CPU time its event loops used so far, in nanoseconds
+     */
+    public long cpuTime() {
+        long cpuTime = 0;
+        try {
+            for (EventExecutor eventLoop : group) {
+                cpuTime += eventLoop.submit(() -> ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime()).sync().getNow();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return cpuTime;
+    }
+
+    @Override
+    public void close() {
+        serverChannel.close().syncUninterruptibly();
+        group.shutdownGracefully().syncUninterruptibly();
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.yewyc.benchmark;
+
+import com.github.yewyc.loadgenerator.RateFunction;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One phase of the benchmark plan. The phases run back-to-back on the same connections and each one is reported as
+ * its own StatisticPhase.
+ *
+ * @param name Name in the report and the HdrHistogram log tag: letters, digits, '.', '_' or '-'
+ * @param duration Duration of the phase, in whole seconds
+ * @param rate Target rate over the phase. Ignored if it is a closed model.
+ */
+public record Phase(String name, Duration duration, RateFunction rate) {
+
+    public Phase {
+        if (name == null || !name.matches("[\\w.-]+")) {
+            throw new IllegalArgumentException("name must be letters, digits, '.', '_' or '-', got: " + name);
+        }
+        if (duration == null || duration.toSeconds() <= 0) {
+            throw new IllegalArgumentException("duration must be at least 1 second");
+        }
+        if (rate == null) {
+            throw new IllegalArgumentException("rate must not be null");
+        }
+    }
+
+    public static Phase constant(String name, Duration duration, double rate) {
+        return new Phase(name, duration, RateFunction.constant(rate));
+    }
+
+    /**
+     * @return the same phase at a share of the rate
+     */
+    public Phase scaled(double share) {
+        RateFunction full = this.rate;
+        return new Phase(name, duration, (elapsedNs, phaseNs) -> full.rateAt(elapsedNs, phaseNs) * share);
+    }
+
+    /**
+     * @param plan comma separated {@code <name>:<duration>:<rate>}, see {@link RateFunction#parse(String)}. For
+     *             example {@code warm-up:10s:100..1000,steady:30s:1000,spike:20s:1000^5000@5s+5s}
+     */
+    public static List<Phase> parsePlan(String plan) {
+        List<Phase> phases = new ArrayList<>();
+        for (String phase : plan.split(",")) {
+            String[] parts = phase.trim().split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid phase, expected <name>:<duration>:<rate>: " + phase);
+            }
+            phases.add(new Phase(parts[0], RateFunction.parseSeconds(parts[1]), RateFunction.parse(parts[2])));
+        }
+        return phases;
+    }
+}
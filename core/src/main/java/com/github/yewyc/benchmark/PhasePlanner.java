@@ -0,0 +1,26 @@
+package com.github.yewyc.benchmark;
+
+import com.github.yewyc.stats.StatisticPhase;
+
+import java.util.List;
+
+/**
+ * Chooses the phases of a run one at a time, so a phase can depend on the results of the previous ones. The phases run
+ * back-to-back on the same connections.
+ */
+@FunctionalInterface
+public interface PhasePlanner {
+
+    /**
+     * @param completed the phases already run, in order
+     * @return the next phase, or null to finish the run
+     */
+    Phase next(List<StatisticPhase> completed);
+
+    /**
+     * A plan fixed before the run
+     */
+    static PhasePlanner of(List<Phase> plan) {
+        return completed -> completed.size() < plan.size() ? plan.get(completed.size()) : null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.yewyc.benchmark;
+
+import com.github.yewyc.stats.StatisticInterval;
+
+import java.util.List;
+
+/**
+ * Receives the intervals of a phase while it is running. It is called from the reporter thread, never from an event loop.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    /**
+     * @param phase the name of the running phase
+     * @param interval all the event loops merged
+     * @param eventLoopIntervals one interval per event loop. They are reused after this method returns.
+     */
+    void onInterval(String phase, StatisticInterval interval, List<StatisticInterval> eventLoopIntervals);
+}
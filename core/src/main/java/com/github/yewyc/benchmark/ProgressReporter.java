@@ -0,0 +1,109 @@
+package com.github.yewyc.benchmark;
+
+import com.github.yewyc.stats.SequentialTimeSeriesRecorder;
+import com.github.yewyc.stats.StatisticInterval;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.Future;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.yewyc.stats.Statistic.highestTrackableValue;
+import static com.github.yewyc.stats.Statistic.numberOfSignificantValueDigits;
+
+/**
+ * Collects the interval histograms of every event loop once per second and hands them to the listeners.
+ * <p>
+ * The swap of the interval histograms is submitted to each event loop, the same way as any other task, so the
+ * recording path stays free of locks. The next swap is only submitted after the listeners are done with the previous
+ * intervals.
+ */
+class ProgressReporter implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgressReporter.class);
+
+    private final String phase;
+    private final Map<EventLoop, SequentialTimeSeriesRecorder> recorders;
+    private final List<ProgressListener> listeners;
+    private final Histogram merged = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+    private final Histogram mergedServiceTime = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+    private final Histogram mergedFirstByte = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+    private ScheduledFuture<?> task;
+
+    ProgressReporter(String phase, Map<EventLoop, SequentialTimeSeriesRecorder> recorders, List<ProgressListener> listeners) {
+        this.phase = phase;
+        this.recorders = recorders;
+        this.listeners = listeners;
+    }
+
+    void start(ScheduledExecutorService executor) {
+        if (!listeners.isEmpty()) {
+            this.task = executor.scheduleAtFixedRate(this::report, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Reports what was recorded after the last interval
+     */
+    @Override
+    public void close() {
+        if (task != null) {
+            task.cancel(false);
+            // report is synchronized, it waits for a running one
+            report();
+        }
+    }
+
+    private synchronized void report() {
+        try {
+            List<Future<StatisticInterval>> futures = new ArrayList<>();
+            recorders.forEach((eventLoop, recorder) -> futures.add(eventLoop.submit(recorder::swapInterval)));
+
+            List<StatisticInterval> intervals = new ArrayList<>();
+            long errors = 0;
+            long delayed = 0;
+            long dropped = 0;
+            long bytes = 0;
+            long startTimeStamp = Long.MAX_VALUE;
+            long endTimeStamp = 0;
+            merged.reset();
+            mergedServiceTime.reset();
+            mergedFirstByte.reset();
+            for (Future<StatisticInterval> future : futures) {
+                StatisticInterval interval = future.sync().getNow();
+                intervals.add(interval);
+                merged.add(interval.latency());
+                mergedServiceTime.add(interval.serviceTime());
+                mergedFirstByte.add(interval.firstByte());
+                errors += interval.errors();
+                delayed += interval.delayed();
+                dropped += interval.dropped();
+                bytes += interval.bytes();
+                startTimeStamp = Math.min(startTimeStamp, interval.latency().getStartTimeStamp());
+                endTimeStamp = Math.max(endTimeStamp, interval.latency().getEndTimeStamp());
+            }
+            merged.setStartTimeStamp(startTimeStamp);
+            merged.setEndTimeStamp(endTimeStamp);
+            mergedServiceTime.setStartTimeStamp(startTimeStamp);
+            mergedServiceTime.setEndTimeStamp(endTimeStamp);
+            mergedFirstByte.setStartTimeStamp(startTimeStamp);
+            mergedFirstByte.setEndTimeStamp(endTimeStamp);
+
+            StatisticInterval interval = new StatisticInterval(merged, mergedServiceTime, mergedFirstByte, errors, delayed, dropped, bytes);
+            for (ProgressListener listener : listeners) {
+                listener.onInterval(phase, interval, intervals);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Failed to report the progress of the phase " + phase, e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.yewyc.benchmark;
+
+import com.github.yewyc.loadgenerator.Protocol;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.NetUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import java.util.List;
+
+/**
+ * The TLS of the https connections of a run. The connections are opened one at a time, so a connection can resume the
+ * session of the previous one, and their handshakes are recorded in {@link TlsHandshakes} rather than in the latency of
+ * the first phase.
+ */
+class TlsConnections {
+
+    private static final Logger log = LoggerFactory.getLogger(TlsConnections.class);
+
+    // bytes read after the handshake: with TLS 1.3 the server sends the ticket to resume the session then
+    private static final AttributeKey<Future<Void>> SESSION_TICKET = AttributeKey.valueOf("session-ticket");
+    private static final long SESSION_TICKET_TIMEOUT_MS = 1_000;
+
+    private final SslContext sslContext;
+    private final TrustAllManager trustManager = new TrustAllManager();
+    private final TlsHandshakes handshakes;
+    private final boolean sessionResumption;
+    private final String host;
+    private final int port;
+    // false once a server did not send a ticket in time, e.g. it sends them with the first response
+    private boolean waitForSessionTickets = true;
+
+    TlsConnections(BenchmarkRecord record, String host, int port, TlsHandshakes handshakes) {
+        TlsEngine engine = record.tlsEngine().orFallback();
+        log.info("Using the TLS engine " + engine);
+        // advertised with ALPN, a server that serves both picks the version of the prior knowledge
+        String applicationProtocol = record.protocol() == Protocol.h2c ? ApplicationProtocolNames.HTTP_2 : ApplicationProtocolNames.HTTP_1_1;
+        try {
+            this.sslContext = SslContextBuilder.forClient()
+                    .sslProvider(engine.sslProvider())
+                    .trustManager(trustManager)
+                    .applicationProtocolConfig(new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+                            ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                            ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                            applicationProtocol))
+                    .build();
+        } catch (SSLException e) {
+            throw new RuntimeException(e);
+        }
+        this.handshakes = handshakes;
+        this.sessionResumption = record.tlsSessionResumption();
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Adds the TLS handlers of a new connection. The handlers added after them see the decrypted bytes.
+     */
+    void addHandlers(Channel ch) {
+        // the client session cache is keyed by the peer, so without it nothing is resumed
+        SslHandler sslHandler;
+        if (sessionResumption) {
+            sslHandler = sslContext.newHandler(ch.alloc(), host, port);
+        } else {
+            sslHandler = sslContext.newHandler(ch.alloc());
+            serverName(sslHandler.engine(), host);
+        }
+        Promise<Void> sessionTicket = ch.eventLoop().newPromise();
+        ch.attr(SESSION_TICKET).set(sessionTicket);
+        ChannelPipeline p = ch.pipeline();
+        // before the SslHandler: the handshake starts when the connection is active
+        p.addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelActive(ChannelHandlerContext ctx) throws Exception {
+                long start = System.nanoTime();
+                sslHandler.handshakeFuture().addListener(future -> {
+                    if (future.isSuccess()) {
+                        handshakes.record(System.nanoTime() - start, trustManager.resumed());
+                    }
+                });
+                super.channelActive(ctx);
+            }
+
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                boolean handshakeDone = sslHandler.handshakeFuture().isSuccess();
+                // the SslHandler decrypts it before it returns
+                super.channelRead(ctx, msg);
+                if (handshakeDone) {
+                    sessionTicket.trySuccess(null);
+                    ctx.pipeline().remove(this);
+                }
+            }
+        });
+        p.addLast(sslHandler);
+    }
+
+    /**
+     * Waits for the handshake of a new connection and, to resume it, for the TLS 1.3 session ticket
+     */
+    void awaitHandshake(Channel ch) throws InterruptedException {
+        SslHandler sslHandler = ch.pipeline().get(SslHandler.class);
+        sslHandler.handshakeFuture().sync();
+        if (sessionResumption && waitForSessionTickets && "TLSv1.3".equals(sslHandler.engine().getSession().getProtocol())) {
+            if (!ch.attr(SESSION_TICKET).get().await(SESSION_TICKET_TIMEOUT_MS)) {
+                log.warn("No TLS session ticket " + SESSION_TICKET_TIMEOUT_MS + "ms after the handshake, the next connections don't wait for it");
+                waitForSessionTickets = false;
+            }
+        }
+    }
+
+    /*
+     * SNI for an engine created without the peer, a virtual host needs it to pick its certificate
+     */
+    private static void serverName(SSLEngine engine, String host) {
+        if (NetUtil.isValidIpV4Address(host) || NetUtil.isValidIpV6Address(host)) {
+            return;
+        }
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setServerNames(List.of(new SNIHostName(host)));
+        engine.setSSLParameters(parameters);
+    }
+}
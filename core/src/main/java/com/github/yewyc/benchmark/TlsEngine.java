@@ -0,0 +1,41 @@
+package com.github.yewyc.benchmark;
+
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The TLS implementation of the https connections. OpenSSL (BoringSSL, bundled for Linux) handshakes and encrypts with
+ * less CPU than the JDK engine, so the load generator saturates later.
+ */
+public enum TlsEngine {
+    jdk, openssl;
+
+    private static final Logger log = LoggerFactory.getLogger(TlsEngine.class);
+
+    public boolean isAvailable() {
+        return switch (this) {
+            case jdk -> true;
+            case openssl -> OpenSsl.isAvailable();
+        };
+    }
+
+    public SslProvider sslProvider() {
+        return switch (this) {
+            case jdk -> SslProvider.JDK;
+            case openssl -> SslProvider.OPENSSL;
+        };
+    }
+
+    /**
+     * @return this engine, or jdk when it is not available on this machine
+     */
+    public TlsEngine orFallback() {
+        if (isAvailable()) {
+            return this;
+        }
+        log.warn("The TLS engine " + this + " is not available, falling back to jdk: " + OpenSsl.unavailabilityCause());
+        return jdk;
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.yewyc.benchmark;
+
+import org.HdrHistogram.Histogram;
+
+import static com.github.yewyc.stats.Statistic.highestTrackableValue;
+import static com.github.yewyc.stats.Statistic.numberOfSignificantValueDigits;
+
+/**
+ * The TLS handshakes of the connections of a run, in nanoseconds. They happen before the first phase, so they are not
+ * part of its latency.
+ * <p>
+ * The connections are opened one after the other, but their handshakes complete on different event loops.
+ */
+public class TlsHandshakes {
+
+    private final Histogram durations = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+    private long resumed;
+
+    synchronized void record(long durationNs, boolean resumed) {
+        this.durations.recordValue(durationNs);
+        if (resumed) {
+            this.resumed++;
+        }
+    }
+
+    public synchronized Histogram getDurations() {
+        return this.durations.copy();
+    }
+
+    public synchronized long getCount() {
+        return this.durations.getTotalCount();
+    }
+
+    /**
+     * @return the handshakes that resumed the session of a previous connection instead of a full key exchange
+     */
+    public synchronized long getResumed() {
+        return this.resumed;
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.yewyc.benchmark;
+
+import io.netty.channel.Channel;
+import io.netty.channel.IoHandlerFactory;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollIoHandler;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalIoHandler;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.uring.IoUring;
+import io.netty.channel.uring.IoUringIoHandler;
+import io.netty.channel.uring.IoUringSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Netty transport of the load generator. The native ones avoid the selector wakeups and make fewer syscalls per
+ * request, but they are only available on Linux.
+ * <p>
+ * local has no sockets: the connections go to the test server's handlers in the same JVM, see {@link LoopbackServer}.
+ * Without the network and the server of the test, what it measures is the ceiling of the load generator.
+ */
+public enum Transport {
+    nio, epoll, io_uring, local;
+
+    private static final Logger log = LoggerFactory.getLogger(Transport.class);
+
+    public boolean isAvailable() {
+        return switch (this) {
+            case nio, local -> true;
+            case epoll -> Epoll.isAvailable();
+            case io_uring -> IoUring.isAvailable();
+        };
+    }
+
+    public IoHandlerFactory ioHandlerFactory() {
+        return switch (this) {
+            case nio -> NioIoHandler.newFactory();
+            case epoll -> EpollIoHandler.newFactory();
+            case io_uring -> IoUringIoHandler.newFactory();
+            case local -> LocalIoHandler.newFactory();
+        };
+    }
+
+    public Class<? extends Channel> channelClass() {
+        return switch (this) {
+            case nio -> NioSocketChannel.class;
+            case epoll -> EpollSocketChannel.class;
+            case io_uring -> IoUringSocketChannel.class;
+            case local -> LocalChannel.class;
+        };
+    }
+
+    /**
+     * @return this transport, or nio when it is not available on this machine
+     */
+    public Transport orFallback() {
+        if (isAvailable()) {
+            return this;
+        }
+        Throwable cause = switch (this) {
+            case nio, local -> null;
+            case epoll -> Epoll.unavailabilityCause();
+            case io_uring -> IoUring.unavailabilityCause();
+        };
+        log.warn("The transport " + this + " is not available, falling back to nio: " + cause);
+        return nio;
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.yewyc.benchmark;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.net.Socket;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Trusts any server certificate, like wrk: the servers under test often have a self-signed one. It also tells whether
+ * a handshake was a full one, a resumed session skips the certificate.
+ * <p>
+ * It works because the connections are opened one at a time: a single handshake is in progress.
+ */
+class TrustAllManager extends X509ExtendedTrustManager {
+
+    private final AtomicBoolean checked = new AtomicBoolean();
+
+    /**
+     * @return true if the handshake that just completed didn't check a certificate
+     */
+    boolean resumed() {
+        return !checked.getAndSet(false);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        checked.set(true);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        checked.set(true);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        checked.set(true);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) {
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+    }
+}
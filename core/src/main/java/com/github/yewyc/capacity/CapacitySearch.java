@@ -0,0 +1,125 @@
+package com.github.yewyc.capacity;
+
+import com.github.yewyc.benchmark.Phase;
+import com.github.yewyc.benchmark.PhasePlanner;
+import com.github.yewyc.stats.StatisticPhase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the highest rate that meets an SLO with short open-model probes.
+ * <p>
+ * The rate doubles from the start rate until a probe fails, then the search bisects between the highest rate that
+ * passed and the lowest one that failed, until they are within the precision. The probes run back-to-back on the same
+ * connections and, having the same duration, reuse the same histograms.
+ */
+public class CapacitySearch implements PhasePlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(CapacitySearch.class);
+
+    private final Slo slo;
+    private final double startRate;
+    private final double maxRate;
+    private final Duration probeDuration;
+    private final double precision;
+    private final int maxProbes;
+    private final Duration warmUpDuration;
+
+    private final List<Probe> probes = new ArrayList<>();
+    private boolean warmingUp;
+    private double highestPassed = 0;
+    private double lowestFailed = Double.POSITIVE_INFINITY;
+
+    /**
+     * @param precision stop when the rates that passed and failed are within this share of the latter, e.g. 0.05
+     * @param warmUpDuration a first phase at the start rate that is not a probe (can be null)
+     */
+    public CapacitySearch(Slo slo, double startRate, double maxRate, Duration probeDuration, double precision, int maxProbes, Duration warmUpDuration) {
+        if (startRate < 1 || maxRate < startRate) {
+            throw new IllegalArgumentException("rates must be 1 <= startRate <= maxRate, got: " + startRate + ", " + maxRate);
+        }
+        if (precision <= 0 || precision >= 1) {
+            throw new IllegalArgumentException("precision must be in (0, 1), got: " + precision);
+        }
+        if (maxProbes <= 0) {
+            throw new IllegalArgumentException("maxProbes must be greater than 0, got: " + maxProbes);
+        }
+        this.slo = slo;
+        this.startRate = startRate;
+        this.maxRate = maxRate;
+        this.probeDuration = probeDuration;
+        this.precision = precision;
+        this.maxProbes = maxProbes;
+        this.warmUpDuration = warmUpDuration;
+    }
+
+    @Override
+    public Phase next(List<StatisticPhase> completed) {
+        if (completed.isEmpty() && warmUpDuration != null && !warmUpDuration.isZero()) {
+            warmingUp = true;
+            return Phase.constant("warm-up", warmUpDuration, startRate);
+        }
+        if (warmingUp) {
+            warmingUp = false;
+        } else if (!completed.isEmpty()) {
+            evaluate(completed.get(completed.size() - 1));
+        }
+        double rate = nextRate();
+        if (Double.isNaN(rate)) {
+            log.info("Capacity search finished: sustainable_rate=" + highestPassed + ", probes=" + probes.size());
+            return null;
+        }
+        return Phase.constant("probe-" + (probes.size() + 1), probeDuration, rate);
+    }
+
+    private void evaluate(StatisticPhase phase) {
+        double rate = phase.getTargetRate();
+        String violation = slo.violation(phase);
+        probes.add(new Probe(rate, phase, violation));
+        if (violation == null) {
+            highestPassed = Math.max(highestPassed, rate);
+        } else {
+            lowestFailed = Math.min(lowestFailed, rate);
+        }
+        log.info("Probe at " + rate + " req/s: " + (violation == null ? "passed" : "failed, " + violation));
+    }
+
+    /**
+     * @return NaN when the search is over
+     */
+    private double nextRate() {
+        if (probes.isEmpty()) {
+            return startRate;
+        }
+        if (probes.size() >= maxProbes) {
+            return Double.NaN;
+        }
+        if (lowestFailed == Double.POSITIVE_INFINITY) {
+            return highestPassed >= maxRate ? Double.NaN : Math.min(maxRate, highestPassed * 2);
+        }
+        if (lowestFailed - highestPassed <= precision * lowestFailed) {
+            return Double.NaN;
+        }
+        double rate = Math.rint((highestPassed + lowestFailed) / 2);
+        // nothing passed down to 1 req/s, or the rates are too close to be told apart
+        return rate < 1 || rate == highestPassed || rate == lowestFailed ? Double.NaN : rate;
+    }
+
+    /**
+     * @return the highest rate that met the SLO, 0 if none did
+     */
+    public double getSustainableRate() {
+        return highestPassed;
+    }
+
+    /**
+     * @return the probes in the order they ran
+     */
+    public List<Probe> getProbes() {
+        return probes;
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.yewyc.capacity;
+
+import com.github.yewyc.stats.StatisticPhase;
+
+/**
+ * One phase of a capacity search.
+ *
+ * @param rate Target rate of the phase
+ * @param phase Statistics of the phase
+ * @param violation Why the SLO was not met, null when it was
+ */
+public record Probe(double rate, StatisticPhase phase, String violation) {
+
+    public boolean passed() {
+        return violation == null;
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.yewyc.capacity;
+
+import com.github.yewyc.stats.StatisticPhase;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+
+import static com.github.yewyc.stats.Statistic.scale;
+
+/**
+ * The service level a rate must meet to be sustainable.
+ *
+ * @param percentile Percentile of the response time, e.g. 99
+ * @param latency Highest response time at that percentile. It is measured from the intended time, so the queueing
+ *                counts.
+ * @param maxErrorRate Highest share of non-2xx or 3xx responses, in percent
+ */
+public record Slo(double percentile, Duration latency, double maxErrorRate) {
+
+    // below it the load generator itself could not send the rate: the probe says nothing about the server
+    static final double MIN_ACHIEVED_RATIO = 0.99;
+
+    public Slo {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100], got: " + percentile);
+        }
+        if (latency == null || latency.isZero() || latency.isNegative()) {
+            throw new IllegalArgumentException("latency must be positive and non-null");
+        }
+        if (maxErrorRate < 0) {
+            throw new IllegalArgumentException("maxErrorRate must not be negative, got: " + maxErrorRate);
+        }
+    }
+
+    /**
+     * @return null when the phase met it, otherwise why it did not
+     */
+    public String violation(StatisticPhase phase) {
+        Histogram histogram = phase.getLatencyHistogram();
+        long requests = histogram.getTotalCount();
+        if (requests == 0) {
+            return "no responses";
+        }
+        long latencyAtPercentile = histogram.getValueAtPercentile(percentile);
+        if (latencyAtPercentile > latency.toNanos()) {
+            return "p" + percentile + " " + String.format("%.2f", latencyAtPercentile / scale) + "ms";
+        }
+        double errorRate = phase.getErrors() * 100.0 / requests;
+        if (errorRate > maxErrorRate) {
+            return "errors " + String.format("%.3f", errorRate) + "%";
+        }
+        if (phase.getAchievedRate() < phase.getTargetRate() * MIN_ACHIEVED_RATIO) {
+            return "sent " + String.format("%.2f", phase.getAchievedRate()) + " req/s";
+        }
+        return null;
+    }
+}
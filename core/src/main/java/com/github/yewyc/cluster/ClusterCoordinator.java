@@ -0,0 +1,277 @@
+package com.github.yewyc.cluster;
+
+import com.github.yewyc.benchmark.BenchmarkRecord;
+import com.github.yewyc.benchmark.Phase;
+import com.github.yewyc.stats.StatisticEndpoint;
+import com.github.yewyc.stats.StatisticPhase;
+import com.github.yewyc.stats.StatisticTick;
+import org.HdrHistogram.Histogram;
+import org.jgroups.Address;
+import org.jgroups.BytesMessage;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.Receiver;
+import org.jgroups.View;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.yewyc.stats.Statistic.highestTrackableValue;
+import static com.github.yewyc.stats.Statistic.numberOfSignificantValueDigits;
+
+/**
+ * Drives a benchmark from several load generator JVMs, the {@link ClusterWorker}s, that form a JGroups cluster.
+ * <p>
+ * Each worker gets some of the connections and the share of the rate of its connections, and starts its first phase at
+ * a wall clock time chosen by the coordinator, so the clocks of the machines must be in sync (NTP). The workers send
+ * back their per-second histograms, which are merged second by second into one StatisticPhase per phase, and their
+ * endpoints, merged by name.
+ * <p>
+ * Not every member of the cluster is a worker: the coordinator asks the members for their role with a {@link #HELLO}
+ * and sends the runs only to the ones that answer as workers.
+ */
+public class ClusterCoordinator implements Receiver, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterCoordinator.class);
+
+    static final String CLUSTER_NAME = "yewyc";
+    static final byte RUN = 1;
+    static final byte RESULT = 2;
+    static final byte FAILED = 3;
+    // followed by the role of the sender
+    static final byte HELLO = 4;
+    static final byte COORDINATOR = 1;
+    static final byte WORKER = 2;
+
+    private final JChannel channel;
+    private final Object viewLock = new Object();
+    private final Map<Address, List<StatisticPhase>> results = new ConcurrentHashMap<>();
+    private final Map<Address, String> failures = new ConcurrentHashMap<>();
+    private final Set<Address> workerMembers = ConcurrentHashMap.newKeySet();
+    private volatile CountDownLatch pendingWorkers;
+
+    private ClusterCoordinator(String config) throws Exception {
+        this.channel = new JChannel(config);
+    }
+
+    /**
+     * @param config JGroups stack, e.g. udp.xml or tcp.xml
+     * @return the coordinator, once it joined the cluster
+     */
+    public static ClusterCoordinator connect(String config) throws Exception {
+        ClusterCoordinator coordinator = new ClusterCoordinator(config);
+        coordinator.channel.setReceiver(coordinator);
+        coordinator.channel.connect(CLUSTER_NAME);
+        return coordinator;
+    }
+
+    @Override
+    public void viewAccepted(View view) {
+        log.info("Cluster view: " + view);
+        synchronized (viewLock) {
+            viewLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void receive(Message msg) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(msg.getArray(), msg.getOffset(), msg.getLength()))) {
+            byte type = in.readByte();
+            if (type == HELLO) {
+                if (in.readByte() == WORKER) {
+                    workerMembers.add(msg.getSrc());
+                    synchronized (viewLock) {
+                        viewLock.notifyAll();
+                    }
+                }
+                return;
+            } else if (type == RESULT) {
+                results.put(msg.getSrc(), PhaseCodec.read(in));
+            } else if (type == FAILED) {
+                failures.put(msg.getSrc(), in.readUTF());
+            } else {
+                return;
+            }
+            CountDownLatch latch = pendingWorkers;
+            if (latch != null) {
+                latch.countDown();
+            }
+        } catch (IOException e) {
+            log.error("Invalid message from " + msg.getSrc(), e);
+        }
+    }
+
+    /**
+     * @param record the whole benchmark, split among the workers
+     * @param args the arguments the workers build the record from
+     * @param workers number of workers to wait for
+     * @param startDelay from now to the synchronized start: long enough for the workers to connect
+     * @return the phases of all the workers merged
+     */
+    public List<StatisticPhase> run(BenchmarkRecord record, List<String> args, int workers, Duration startDelay) throws Exception {
+        if (record.connections() < workers) {
+            throw new IllegalArgumentException("connections must be at least the number of workers, got: " + record.connections());
+        }
+        List<Address> members = awaitWorkers(workers, Duration.ofMinutes(1));
+        results.clear();
+        failures.clear();
+        pendingWorkers = new CountDownLatch(workers);
+
+        long startAt = System.currentTimeMillis() + startDelay.toMillis();
+        for (int i = 0; i < workers; i++) {
+            // the remainder goes to the first ones
+            int connections = record.connections() / workers + (i < record.connections() % workers ? 1 : 0);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeByte(RUN);
+                out.writeLong(startAt);
+                out.writeInt(connections);
+                out.writeInt(args.size());
+                for (String arg : args) {
+                    out.writeUTF(arg);
+                }
+            }
+            channel.send(new BytesMessage(members.get(i), bytes.toByteArray()));
+            log.info("Worker " + members.get(i) + ": connections=" + connections);
+        }
+
+        // the phases, plus the wait for the in-flight requests of each one
+        long expectedSeconds = startDelay.toSeconds();
+        for (Phase phase : record.plan()) {
+            expectedSeconds += phase.duration().toSeconds() + 10;
+        }
+        if (!pendingWorkers.await(expectedSeconds + 60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Timed out waiting for " + pendingWorkers.getCount() + " workers");
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("The run failed on workers " + failures);
+        }
+
+        List<List<StatisticPhase>> workerPhases = new ArrayList<>();
+        for (Address member : members.subList(0, workers)) {
+            workerPhases.add(results.get(member));
+        }
+        return merge(workerPhases);
+    }
+
+    /*
+     * The members that joined since the last HELLO are asked for their role, and the workers answer with theirs
+     */
+    private List<Address> awaitWorkers(int workers, Duration timeout) throws Exception {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        View greeted = null;
+        while (true) {
+            View view = channel.getView();
+            if (!view.equals(greeted)) {
+                channel.send(new BytesMessage(null, new byte[]{HELLO, COORDINATOR}));
+                greeted = view;
+            }
+            synchronized (viewLock) {
+                List<Address> members = new ArrayList<>();
+                for (Address member : channel.getView().getMembers()) {
+                    if (workerMembers.contains(member)) {
+                        members.add(member);
+                    }
+                }
+                if (members.size() >= workers) {
+                    return members;
+                }
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    throw new IllegalStateException("Only " + members.size() + " of " + workers + " workers joined the cluster");
+                }
+                log.info("Waiting for workers: " + members.size() + " of " + workers);
+                // a view can change between the HELLO and the wait
+                viewLock.wait(Math.min(remainingMs, 1000));
+            }
+        }
+    }
+
+    /*
+     * Phase by phase and second by second. The seconds are aligned because the workers start together. The workers run
+     * the same mix, so their endpoints have the same names.
+     */
+    static List<StatisticPhase> merge(List<List<StatisticPhase>> workerPhases) {
+        List<StatisticPhase> merged = new ArrayList<>();
+        int phases = workerPhases.get(0).size();
+        for (int p = 0; p < phases; p++) {
+            String name = workerPhases.get(0).get(p).getName();
+            Duration duration = Duration.ZERO;
+            double targetRate = 0;
+            double achievedRate = 0;
+            int seconds = 0;
+            for (List<StatisticPhase> worker : workerPhases) {
+                StatisticPhase phase = worker.get(p);
+                duration = duration.compareTo(phase.duration()) > 0 ? duration : phase.duration();
+                targetRate += phase.getTargetRate();
+                achievedRate += phase.getAchievedRate();
+                seconds = Math.max(seconds, phase.getStatisticTicks().size());
+            }
+            List<StatisticTick> ticks = new ArrayList<>(seconds);
+            for (int s = 0; s < seconds; s++) {
+                Histogram latency = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+                Histogram serviceTime = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+                Histogram firstByte = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+                long counter = 0;
+                long errors = 0;
+                long delayed = 0;
+                long dropped = 0;
+                long bytes = 0;
+                // they grow with the values they record, like the ones of the recorder
+                Histogram sendLag = new Histogram(numberOfSignificantValueDigits);
+                Histogram hiccups = new Histogram(numberOfSignificantValueDigits);
+                for (List<StatisticPhase> worker : workerPhases) {
+                    List<StatisticTick> workerTicks = worker.get(p).getStatisticTicks();
+                    if (s < workerTicks.size()) {
+                        StatisticTick tick = workerTicks.get(s);
+                        latency.add(tick.latency());
+                        serviceTime.add(tick.serviceTime());
+                        firstByte.add(tick.firstByte());
+                        counter += tick.counter();
+                        errors += tick.errors();
+                        delayed += tick.delayed();
+                        dropped += tick.dropped();
+                        bytes += tick.bytes();
+                        sendLag.add(tick.sendLag());
+                        hiccups.add(tick.hiccups());
+                    }
+                }
+                ticks.add(new StatisticTick(latency, serviceTime, firstByte, counter, errors, delayed, dropped, bytes, sendLag, hiccups));
+            }
+            // in the order of the mix
+            Map<String, Histogram> endpointLatencies = new LinkedHashMap<>();
+            Map<String, Long> endpointErrors = new HashMap<>();
+            for (List<StatisticPhase> worker : workerPhases) {
+                for (StatisticEndpoint endpoint : worker.get(p).getEndpoints()) {
+                    endpointLatencies.computeIfAbsent(endpoint.name(), k -> new Histogram(highestTrackableValue, numberOfSignificantValueDigits)).add(endpoint.latency());
+                    endpointErrors.merge(endpoint.name(), endpoint.errors(), Long::sum);
+                }
+            }
+            List<StatisticEndpoint> endpoints = new ArrayList<>();
+            endpointLatencies.forEach((endpoint, latency) -> endpoints.add(new StatisticEndpoint(endpoint, latency, endpointErrors.get(endpoint))));
+            merged.add(new StatisticPhase(name, duration, ticks, targetRate, achievedRate, endpoints));
+        }
+        return merged;
+    }
+
+    @Override
+    public void close() {
+        channel.close();
+    }
+}
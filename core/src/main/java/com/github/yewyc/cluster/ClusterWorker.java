@@ -0,0 +1,146 @@
+package com.github.yewyc.cluster;
+
+import com.github.yewyc.benchmark.BenchmarkRecord;
+import com.github.yewyc.benchmark.BenchmarkRun;
+import com.github.yewyc.benchmark.PhasePlanner;
+import com.github.yewyc.stats.StatisticPhase;
+import org.jgroups.Address;
+import org.jgroups.BytesMessage;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.jgroups.Receiver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * A load generator JVM of a distributed run. It waits for the {@link ClusterCoordinator}, runs its part of the
+ * benchmark from the synchronized start time and sends back its phases.
+ */
+public class ClusterWorker implements Receiver, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterWorker.class);
+
+    private final JChannel channel;
+    private final Function<List<String>, BenchmarkRecord> recordFactory;
+    // the runs are blocking, they can't use the JGroups thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "cluster-worker"));
+    private final Semaphore completedRuns = new Semaphore(0);
+
+    private ClusterWorker(String config, Function<List<String>, BenchmarkRecord> recordFactory) throws Exception {
+        this.recordFactory = recordFactory;
+        this.channel = new JChannel(config);
+    }
+
+    /**
+     * @param config JGroups stack, e.g. udp.xml or tcp.xml
+     * @param recordFactory the benchmark of the coordinator, from its arguments
+     * @return the worker, once it joined the cluster
+     */
+    public static ClusterWorker connect(String config, Function<List<String>, BenchmarkRecord> recordFactory) throws Exception {
+        ClusterWorker worker = new ClusterWorker(config, recordFactory);
+        worker.channel.setReceiver(worker);
+        worker.channel.connect(ClusterCoordinator.CLUSTER_NAME);
+        log.info("Worker " + worker.channel.getAddress() + " joined the cluster " + worker.channel.getView());
+        return worker;
+    }
+
+    @Override
+    public void receive(Message msg) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(msg.getArray(), msg.getOffset(), msg.getLength()))) {
+            byte type = in.readByte();
+            if (type == ClusterCoordinator.HELLO) {
+                if (in.readByte() == ClusterCoordinator.COORDINATOR) {
+                    channel.send(new BytesMessage(msg.getSrc(), new byte[]{ClusterCoordinator.HELLO, ClusterCoordinator.WORKER}));
+                }
+                return;
+            }
+            if (type != ClusterCoordinator.RUN) {
+                return;
+            }
+            long startAt = in.readLong();
+            int connections = in.readInt();
+            int size = in.readInt();
+            List<String> args = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                args.add(in.readUTF());
+            }
+            Address coordinator = msg.getSrc();
+            executor.execute(() -> run(coordinator, startAt, connections, args));
+        } catch (Exception e) {
+            log.error("Failed to handle the message from " + msg.getSrc(), e);
+        }
+    }
+
+    private void run(Address coordinator, long startAt, int connections, List<String> args) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            try {
+                BenchmarkRecord record = recordFactory.apply(args).share(connections);
+                log.info("Running " + connections + " connections from " + startAt);
+                PhasePlanner plan = PhasePlanner.of(record.plan());
+                // connected: wait for the others before the first phase
+                List<StatisticPhase> phases = new BenchmarkRun().run(record, completed -> {
+                    if (completed.isEmpty()) {
+                        waitUntil(startAt);
+                    }
+                    return plan.next(completed);
+                });
+                out.writeByte(ClusterCoordinator.RESULT);
+                PhaseCodec.write(out, phases);
+            } catch (RuntimeException e) {
+                log.error("The run failed", e);
+                bytes.reset();
+                out.writeByte(ClusterCoordinator.FAILED);
+                out.writeUTF(String.valueOf(e.getMessage()));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        try {
+            channel.send(new BytesMessage(coordinator, bytes.toByteArray()));
+        } catch (Exception e) {
+            log.error("Failed to send the result to " + coordinator, e);
+        }
+        completedRuns.release();
+    }
+
+    private static void waitUntil(long startAt) {
+        long delay = startAt - System.currentTimeMillis();
+        if (delay < 0) {
+            log.warn("Starting " + -delay + "ms after the synchronized start time");
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Blocks until the worker has completed that number of runs
+     */
+    public void awaitRuns(int runs) throws InterruptedException {
+        completedRuns.acquire(runs);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        channel.close();
+    }
+}
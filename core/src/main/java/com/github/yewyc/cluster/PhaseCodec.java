@@ -0,0 +1,104 @@
+package com.github.yewyc.cluster;
+
+import com.github.yewyc.stats.StatisticEndpoint;
+import com.github.yewyc.stats.StatisticPhase;
+import com.github.yewyc.stats.StatisticTick;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * Binary form of the phases of a worker, with every series of their seconds and their endpoints. The histograms use the
+ * HdrHistogram compressed encoding, so a phase of a few minutes stays in the tens of KB.
+ */
+class PhaseCodec {
+
+    static void write(DataOutput out, List<StatisticPhase> phases) throws IOException {
+        out.writeInt(phases.size());
+        for (StatisticPhase phase : phases) {
+            out.writeUTF(phase.getName());
+            out.writeLong(phase.duration().toNanos());
+            out.writeDouble(phase.getTargetRate());
+            out.writeDouble(phase.getAchievedRate());
+            List<StatisticTick> ticks = phase.getStatisticTicks();
+            out.writeInt(ticks.size());
+            for (StatisticTick tick : ticks) {
+                writeHistogram(out, tick.latency());
+                writeHistogram(out, tick.serviceTime());
+                writeHistogram(out, tick.firstByte());
+                out.writeLong(tick.counter());
+                out.writeLong(tick.errors());
+                out.writeLong(tick.delayed());
+                out.writeLong(tick.dropped());
+                out.writeLong(tick.bytes());
+                writeHistogram(out, tick.sendLag());
+                writeHistogram(out, tick.hiccups());
+            }
+            List<StatisticEndpoint> endpoints = phase.getEndpoints();
+            out.writeInt(endpoints.size());
+            for (StatisticEndpoint endpoint : endpoints) {
+                out.writeUTF(endpoint.name());
+                writeHistogram(out, endpoint.latency());
+                out.writeLong(endpoint.errors());
+            }
+        }
+    }
+
+    static List<StatisticPhase> read(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<StatisticPhase> phases = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = in.readUTF();
+            Duration duration = Duration.ofNanos(in.readLong());
+            double targetRate = in.readDouble();
+            double achievedRate = in.readDouble();
+            int tickCount = in.readInt();
+            List<StatisticTick> ticks = new ArrayList<>(tickCount);
+            for (int j = 0; j < tickCount; j++) {
+                Histogram latency = readHistogram(in);
+                Histogram serviceTime = readHistogram(in);
+                Histogram firstByte = readHistogram(in);
+                long counter = in.readLong();
+                long errors = in.readLong();
+                long delayed = in.readLong();
+                long dropped = in.readLong();
+                long bytes = in.readLong();
+                Histogram sendLag = readHistogram(in);
+                Histogram hiccups = readHistogram(in);
+                ticks.add(new StatisticTick(latency, serviceTime, firstByte, counter, errors, delayed, dropped, bytes, sendLag, hiccups));
+            }
+            int endpointCount = in.readInt();
+            List<StatisticEndpoint> endpoints = new ArrayList<>(endpointCount);
+            for (int j = 0; j < endpointCount; j++) {
+                endpoints.add(new StatisticEndpoint(in.readUTF(), readHistogram(in), in.readLong()));
+            }
+            phases.add(new StatisticPhase(name, duration, ticks, targetRate, achievedRate, endpoints));
+        }
+        return phases;
+    }
+
+    private static void writeHistogram(DataOutput out, AbstractHistogram histogram) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        out.writeInt(length);
+        out.write(buffer.array(), 0, length);
+    }
+
+    private static Histogram readHistogram(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), 0);
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid histogram", e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.yewyc.hdrlog;
+
+import com.github.yewyc.benchmark.BenchmarkRecord;
+import com.github.yewyc.benchmark.Phase;
+import com.github.yewyc.benchmark.ProgressListener;
+import com.github.yewyc.loadgenerator.LoadStrategy;
+import com.github.yewyc.stats.StatisticInterval;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes every interval of the run to a HdrHistogram interval log while the run is in progress.
+ * <p>
+ * The histograms are written in the compressed format of the HdrHistogram log, so any HdrHistogram tool can read the
+ * file. For each phase there are three tags: {@code <phase>} for the response time, {@code <phase>:service} for the
+ * service time and {@code <phase>:first-byte} for the time to first byte. When the event loops are exported, they use
+ * {@code <phase>:loop-<n>} with the same suffixes.
+ * <p>
+ * The benchmark configuration, and for each tag the error, delayed, dropped and byte counts and the target rate of its
+ * phase, go to comments, which the HdrHistogram tools ignore and {@link HistogramLogImporter} reads back.
+ */
+public class HistogramLogExporter implements ProgressListener, Closeable {
+
+    static final String SERVICE_TIME_SUFFIX = ":service";
+    static final String FIRST_BYTE_SUFFIX = ":first-byte";
+    static final String EVENT_LOOP_INFIX = ":loop-";
+    static final String RUN_COMMENT = "yewyc ";
+    static final String COUNTERS_COMMENT = "counters ";
+
+    private final PrintStream out;
+    private final HistogramLogWriter writer;
+    private final boolean exportEventLoops;
+    // the target rate of each phase, 0 in the closed model
+    private final Map<String, Double> rates = new HashMap<>();
+
+    public HistogramLogExporter(File file, BenchmarkRecord record, boolean exportEventLoops) throws FileNotFoundException {
+        this.out = new PrintStream(new FileOutputStream(file), false);
+        this.writer = new HistogramLogWriter(this.out);
+        this.exportEventLoops = exportEventLoops;
+        for (Phase phase : record.plan()) {
+            rates.put(phase.name(), record.mode() == LoadStrategy.wrk ? 0 : phase.rate().averageRate(phase.duration()));
+        }
+
+        long now = System.currentTimeMillis();
+        writer.outputLogFormatVersion();
+        writer.outputComment(RUN_COMMENT + "threads=" + record.threads() + " connections=" + record.connections() + " url=" + record.urlBase());
+        writer.setBaseTime(now);
+        writer.outputStartTime(now);
+        writer.outputBaseTime(now);
+        writer.outputLegend();
+        out.flush();
+    }
+
+    @Override
+    public void onInterval(String phase, StatisticInterval interval, List<StatisticInterval> eventLoopIntervals) {
+        double rate = rates.getOrDefault(phase, 0.0);
+        write(phase, rate, interval);
+        if (exportEventLoops) {
+            for (int i = 0; i < eventLoopIntervals.size(); i++) {
+                write(phase + EVENT_LOOP_INFIX + i, rate, eventLoopIntervals.get(i));
+            }
+        }
+        // incremental: what was written survives a crash of the run
+        out.flush();
+    }
+
+    private void write(String tag, double rate, StatisticInterval interval) {
+        writer.outputComment(COUNTERS_COMMENT + tag + " " + interval.errors() + " " + interval.delayed() + " " +
+                interval.dropped() + " " + interval.bytes() + " " + rate);
+        write(tag, interval.latency());
+        write(tag + SERVICE_TIME_SUFFIX, interval.serviceTime());
+        write(tag + FIRST_BYTE_SUFFIX, interval.firstByte());
+    }
+
+    private void write(String tag, Histogram histogram) {
+        histogram.setTag(tag);
+        // the values are in nanoseconds, the max column in milliseconds
+        writer.outputIntervalHistogram(histogram);
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+    }
+}
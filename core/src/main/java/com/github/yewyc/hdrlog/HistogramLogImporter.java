@@ -0,0 +1,152 @@
+package com.github.yewyc.hdrlog;
+
+import com.github.yewyc.stats.StatisticPhase;
+import com.github.yewyc.stats.StatisticTick;
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.yewyc.hdrlog.HistogramLogExporter.COUNTERS_COMMENT;
+import static com.github.yewyc.hdrlog.HistogramLogExporter.EVENT_LOOP_INFIX;
+import static com.github.yewyc.hdrlog.HistogramLogExporter.FIRST_BYTE_SUFFIX;
+import static com.github.yewyc.hdrlog.HistogramLogExporter.RUN_COMMENT;
+import static com.github.yewyc.hdrlog.HistogramLogExporter.SERVICE_TIME_SUFFIX;
+
+/**
+ * Loads a log written by {@link HistogramLogExporter}. Each interval of the log becomes a {@link StatisticTick}, so the
+ * reports and the plot work the same as after a run. A log that misses a part of an interval is rejected with an
+ * {@link IOException}.
+ */
+public class HistogramLogImporter {
+
+    private static final long MIN_LAST_INTERVAL_MS = 500;
+
+    public static RecordedRun load(File file) throws IOException {
+        Map<String, String> run = new HashMap<>();
+        // errors, delayed, dropped and bytes per interval
+        Map<String, List<long[]>> counters = new HashMap<>();
+        Map<String, Double> rates = new HashMap<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            if (line.startsWith("#" + RUN_COMMENT)) {
+                for (String property : line.substring(RUN_COMMENT.length() + 1).split(" ")) {
+                    String[] keyValue = property.split("=", 2);
+                    if (keyValue.length != 2) {
+                        throw new IOException("Malformed run in " + file + ": " + line);
+                    }
+                    run.put(keyValue[0], keyValue[1]);
+                }
+            } else if (line.startsWith("#" + COUNTERS_COMMENT)) {
+                // the tag, the 4 counters and the target rate
+                String[] tagCounts = line.substring(COUNTERS_COMMENT.length() + 1).split(" ");
+                if (tagCounts.length != 6) {
+                    throw new IOException("Malformed counters in " + file + ": " + line);
+                }
+                long[] values = new long[4];
+                try {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = Long.parseLong(tagCounts[i + 1]);
+                    }
+                    rates.put(tagCounts[0], Double.parseDouble(tagCounts[5]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed counters in " + file + ": " + line, e);
+                }
+                counters.computeIfAbsent(tagCounts[0], k -> new ArrayList<>()).add(values);
+            }
+        }
+        if (run.isEmpty()) {
+            throw new IOException("Not a log written by this tool: " + file);
+        }
+        if (!run.containsKey("threads") || !run.containsKey("connections") || !run.containsKey("url")) {
+            throw new IOException("Malformed run in " + file + ": " + run);
+        }
+
+        // in the order they ran
+        Map<String, List<Histogram>> latencies = new LinkedHashMap<>();
+        Map<String, List<Histogram>> serviceTimes = new HashMap<>();
+        Map<String, List<Histogram>> firstBytes = new HashMap<>();
+        HistogramLogReader reader = new HistogramLogReader(file);
+        try {
+            EncodableHistogram encodable;
+            while ((encodable = reader.nextIntervalHistogram()) != null) {
+                String tag = encodable.getTag();
+                if (tag == null || tag.contains(EVENT_LOOP_INFIX)) {
+                    continue;
+                }
+                Histogram histogram = (Histogram) encodable;
+                if (tag.endsWith(SERVICE_TIME_SUFFIX)) {
+                    String phase = tag.substring(0, tag.length() - SERVICE_TIME_SUFFIX.length());
+                    serviceTimes.computeIfAbsent(phase, k -> new ArrayList<>()).add(histogram);
+                } else if (tag.endsWith(FIRST_BYTE_SUFFIX)) {
+                    String phase = tag.substring(0, tag.length() - FIRST_BYTE_SUFFIX.length());
+                    firstBytes.computeIfAbsent(phase, k -> new ArrayList<>()).add(histogram);
+                } else {
+                    latencies.computeIfAbsent(tag, k -> new ArrayList<>()).add(histogram);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        List<StatisticPhase> phases = new ArrayList<>();
+        for (Map.Entry<String, List<Histogram>> entry : latencies.entrySet()) {
+            String phase = entry.getKey();
+            int intervals = entry.getValue().size();
+            List<Histogram> phaseServiceTimes = serviceTimes.getOrDefault(phase, List.of());
+            List<Histogram> phaseFirstBytes = firstBytes.getOrDefault(phase, List.of());
+            List<long[]> phaseCounters = counters.getOrDefault(phase, List.of());
+            // every interval of a phase has its counters and its three histograms
+            if (phaseServiceTimes.size() != intervals || phaseFirstBytes.size() != intervals || phaseCounters.size() != intervals) {
+                throw new IOException("Malformed phase " + phase + " in " + file + ": " + intervals + " intervals, " +
+                        phaseServiceTimes.size() + " service times, " + phaseFirstBytes.size() + " first bytes and " +
+                        phaseCounters.size() + " counters");
+            }
+            double targetRate = rates.get(phase);
+            List<StatisticTick> ticks = new ArrayList<>();
+            long durationMs = 0;
+            long responses = 0;
+            for (int i = 0; i < intervals; i++) {
+                Histogram latency = entry.getValue().get(i);
+                Histogram serviceTime = phaseServiceTimes.get(i);
+                Histogram firstByte = phaseFirstBytes.get(i);
+                long[] tickCounters = phaseCounters.get(i);
+                long tickErrors = tickCounters[0];
+                long tickDelayed = tickCounters[1];
+                long tickDropped = tickCounters[2];
+                long tickBytes = tickCounters[3];
+                long intervalMs = latency.getEndTimeStamp() - latency.getStartTimeStamp();
+                durationMs += intervalMs;
+                responses += latency.getTotalCount();
+                if (i > 0 && i == intervals - 1 && intervalMs < MIN_LAST_INTERVAL_MS) {
+                    // the flush at the end of the phase: a partial second would distort the Req/Sec
+                    StatisticTick previous = ticks.remove(ticks.size() - 1);
+                    latency.add(previous.latency());
+                    serviceTime.add(previous.serviceTime());
+                    firstByte.add(previous.firstByte());
+                    tickErrors += previous.errors();
+                    tickDelayed += previous.delayed();
+                    tickDropped += previous.dropped();
+                    tickBytes += previous.bytes();
+                }
+                ticks.add(new StatisticTick(latency, serviceTime, firstByte, latency.getTotalCount(), tickErrors, tickDelayed, tickDropped, tickBytes));
+            }
+            // the log only has the responses, they stand for the sent requests
+            double achievedRate = durationMs > 0 ? responses * 1_000.0 / durationMs : 0;
+            phases.add(new StatisticPhase(phase, Duration.ofMillis(durationMs), ticks, targetRate, targetRate > 0 ? achievedRate : 0));
+        }
+        try {
+            return new RecordedRun(Integer.parseInt(run.get("threads")), Integer.parseInt(run.get("connections")), run.get("url"), phases);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed run in " + file + ": " + run, e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.yewyc.hdrlog;
+
+import com.github.yewyc.stats.StatisticPhase;
+
+import java.util.List;
+
+/**
+ * A run loaded from a HdrHistogram interval log
+ */
+public record RecordedRun(int threads, int connections, String url, List<StatisticPhase> phases) {
+}
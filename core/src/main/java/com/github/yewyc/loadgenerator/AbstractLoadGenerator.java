@@ -1,33 +1,41 @@
 package com.github.yewyc.loadgenerator;
 
 import com.github.yewyc.stats.SequentialTimeSeriesRecorder;
-import com.github.yewyc.stats.Statistic;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.EventLoop;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.handler.codec.http.DefaultFullHttpRequest;
-import io.netty.handler.codec.http.FullHttpRequest;
-import io.netty.handler.codec.http.FullHttpResponse;
-import io.netty.handler.codec.http.HttpHeaderNames;
-import io.netty.handler.codec.http.HttpMethod;
-import io.netty.handler.codec.http.HttpVersion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URL;
 import java.time.Duration;
-import java.util.ArrayDeque;
-import java.util.Queue;
+import java.util.SplittableRandom;
 
-public abstract class AbstractLoadGenerator extends SimpleChannelInboundHandler<FullHttpResponse> {
+/**
+ * Sends the requests of one connection when its strategy decides, and records the responses. How they are written and
+ * matched depends on the {@link Protocol}, see {@link HttpExchange}. It is the last handler of the pipeline, so it
+ * releases what it reads.
+ */
+public abstract class AbstractLoadGenerator extends SimpleChannelInboundHandler<Object> {
 
     private static final Logger log = LoggerFactory.getLogger(AbstractLoadGenerator.class);
     protected static final long nan = Long.MIN_VALUE;
 
     private final Channel channel;
-    private final FullHttpRequest req;
+    private final URL urlBase;
+    private final Protocol protocol;
+    // built by exchange(), once the constructor has returned: it calls back this handler
+    private HttpExchange exchange;
+    private final RequestMix mix;
+    // picks the endpoint of each request, it doesn't allocate. Each connection has its own stream, split from the one
+    // of the run, so they don't pick in lockstep
+    private final SplittableRandom random;
+    // the body of the corpus sent last, -1 without a corpus
+    private int corpusBody = -1;
 
     private SequentialTimeSeriesRecorder localRecorder;
     private boolean running = false;
@@ -37,43 +45,85 @@ public abstract class AbstractLoadGenerator extends SimpleChannelInboundHandler<
     protected long id;
 
     protected final EventLoop eventLoop;
-    private final Queue<Long[]> latencyQueue = new ArrayDeque<>();
+    // requests a connection keeps waiting for a response, 1 without pipelining
+    protected final int pipeline;
+    // intended while the channel was not writable. They are sent, in order, when it becomes writable again
+    private final InflightQueue pendingSends = new InflightQueue();
+
+    // created once, so the hot path doesn't allocate a lambda per request
+    protected final Runnable scheduleNextRequestIfRunningTask = this::scheduleNextRequestIfRunning;
 
     private final boolean assertResponseOperation;
+    // the body is only needed to check or log it
+    private final boolean keepResponseBody;
+
+    // read since the previous response, it goes with the next one
+    private long bytesRead;
+
+    // past it a request is dropped instead of queued, so a stalled connection can't exhaust the memory
+    static final int MAX_PENDING_SENDS = 1 << 16;
 
     public AbstractLoadGenerator(URL urlBase, Channel channel) {
+        this(urlBase, channel, 1, Protocol.http1);
+    }
+
+    /**
+     * @param pipeline requests sent on the connection before the first response: HTTP/1.1 pipelining when above 1, or
+     *                 the concurrent streams of HTTP/2
+     */
+    public AbstractLoadGenerator(URL urlBase, Channel channel, int pipeline, Protocol protocol) {
+        this(urlBase, channel, pipeline, protocol, RequestMix.get(urlBase.getPath()), new SplittableRandom());
+    }
+
+    /**
+     * @param mix    the requests to send, encoded once for the connection
+     * @param random picks the endpoints and bodies of the connection, split from the one of the run
+     */
+    public AbstractLoadGenerator(URL urlBase, Channel channel, int pipeline, Protocol protocol, RequestMix mix, SplittableRandom random) {
+        if (pipeline < 1) {
+            throw new IllegalArgumentException("pipeline must be at least 1, got: " + pipeline);
+        }
+        this.pipeline = pipeline;
         this.assertResponseOperation = System.getProperty("assertResponseOperation", "false").equals("true");
         if (this.assertResponseOperation) {
             log.info("Assert response operation enabled");
         }
-
-        /*
-         * If you use a single AttributeKey, you are effectively using a single variable to store the "intended time."
-         * When you send multiple requests in parallel (pipelining), the second request will overwrite the
-         * start time of the first request.
-         *
-         * Because HTTP/1.1 guarantees that responses arrive in the same order requests were sent (FIFO),
-         * you should use a simple Queue instead of a channel attribute.
-         *
-         */
-        HttpVersion httpVersion = HttpVersion.HTTP_1_1;
+        this.keepResponseBody = this.assertResponseOperation || log.isTraceEnabled();
 
         this.channel = channel;
-        this.req = new DefaultFullHttpRequest(httpVersion, HttpMethod.GET, urlBase.getPath(), Unpooled.EMPTY_BUFFER);
-        this.req.headers().set(HttpHeaderNames.HOST, urlBase.getHost());
-        this.req.headers().set(HttpHeaderNames.CONNECTION, "keep-alive");
-
+        this.urlBase = urlBase;
+        this.protocol = protocol;
+        this.mix = mix;
+        this.random = random;
+        if (mix.corpus() != null) {
+            // the connections don't all send the same bodies at the same time
+            this.corpusBody = mix.corpus().first(random);
+        }
         this.eventLoop = channel.eventLoop();
     }
 
+    /*
+     * Built on the first call, by protocolHandlers() or handlerAdded(), rather than by the constructor: this handler
+     * doesn't escape before it is fully constructed
+     */
+    private HttpExchange exchange() {
+        if (this.exchange == null) {
+            this.exchange = switch (this.protocol) {
+                case http1 -> new Http1Exchange(this, this.channel, this.urlBase, this.mix, this.assertResponseOperation, this.keepResponseBody);
+                case h2c -> new Http2Exchange(this, this.channel, this.urlBase, this.mix, this.assertResponseOperation, this.keepResponseBody);
+            };
+        }
+        return this.exchange;
+    }
+
     /**
-     * It can contains slow operation
      * @param duration
+     * @param recorder shared by all the connections of the same event loop. It must be started before this handler.
      */
-    public AbstractLoadGenerator prepare(Duration duration) {
+    public AbstractLoadGenerator prepare(Duration duration, SequentialTimeSeriesRecorder recorder) {
         assert !eventLoop.inEventLoop();
         this.duration = duration;
-        this.localRecorder = new SequentialTimeSeriesRecorder(this.duration);
+        this.localRecorder = recorder;
         return this;
     }
 
@@ -85,16 +135,34 @@ public abstract class AbstractLoadGenerator extends SimpleChannelInboundHandler<
         eventLoop.execute(this::initializeAndScheduleNextRequest);
     }
 
+    /**
+     * {@link #prepare} and {@link #start} from the event loop, for the tests on a channel whose event loop is their
+     * own thread
+     */
+    void startInEventLoop(Duration duration, SequentialTimeSeriesRecorder recorder) {
+        this.duration = duration;
+        this.localRecorder = recorder;
+        initializeAndScheduleNextRequest();
+    }
+
     private void initializeAndScheduleNextRequest() {
         assert eventLoop.inEventLoop();
         this.running = true;
         this.id = 0;
         this.start = System.nanoTime();
-        this.localRecorder.start(this.start);
         this.end = this.start + this.duration.toNanos();
         scheduleNextRequest();
     }
 
+    /**
+     * Moves the end of the phase of the connection to the one of the {@link OpenLoadDispatcher} that sends on it, which
+     * starts after it
+     */
+    void endAt(long end) {
+        assert eventLoop.inEventLoop();
+        this.end = end;
+    }
+
     protected final void scheduleNextRequestIfRunning() {
         assert this.eventLoop.inEventLoop();
         if (running) {
@@ -104,58 +172,212 @@ public abstract class AbstractLoadGenerator extends SimpleChannelInboundHandler<
 
     protected abstract void scheduleNextRequest();
 
-    protected final void executeRequest(long whenFired, long intendedTime) {
+    /**
+     * A request that can't be written because the channel is not writable is queued with its intended time and sent
+     * by {@link #channelWritabilityChanged}, so its latency still counts from the intended time. It is dropped when the
+     * queue is full, or when its intended time is in the phase but it is fired after its end.
+     * <p>
+     * It doesn't flush: the caller writes all the requests it has to send now, then calls {@link #flush()} once.
+     *
+     * @return true if the request was written or queued
+     */
+    protected final boolean executeRequest(long whenFired, long intendedTime) {
         assert this.eventLoop.inEventLoop();
         if (whenFired > end) {
             this.running = false;
-        } else if (channel.isWritable()) {
-            this.latencyQueue.add(new Long[]{this.id, whenFired, intendedTime});
-            FullHttpRequest localRequest = this.req.retainedDuplicate();
-            if (this.assertResponseOperation) {
-                localRequest.headers().set("X-Request-Id", this.id);
+            if (intendedTime < end) {
+                // late: sending it would overlap the next phase
+                localRecorder.recordDropped(whenFired);
             }
-            channel.writeAndFlush(localRequest).addListener(future -> {
-                if (!future.isSuccess()) {
-                    log.error("Failed to send request {}", this.id, future.cause());
+        } else if (!channel.isActive()) {
+            // closed, e.g. by a read timeout: it would never become writable
+            localRecorder.recordDropped(whenFired);
+        } else if (pendingSends.isEmpty() && channel.isWritable()) {
+            writeRequest(whenFired, intendedTime);
+            return true;
+        } else if (pendingSends.size() < MAX_PENDING_SENDS) {
+            // the id is assigned when it is written
+            pendingSends.add(nan, whenFired, intendedTime);
+            return true;
+        } else {
+            localRecorder.recordDropped(whenFired);
+        }
+        return false;
+    }
+
+    /**
+     * @param intendedTime of a send the load generator scheduled, and made late on its own
+     */
+    protected final void recordSendLag(long now, long intendedTime) {
+        localRecorder.recordSendLag(now, now - intendedTime);
+    }
+
+    /**
+     * Sends what {@link #executeRequest} wrote
+     */
+    protected final void flush() {
+        channel.flush();
+    }
+
+    private void writeRequest(long whenFired, long intendedTime) {
+        int endpoint = mix.pick(random);
+        int body = -1;
+        if (mix.hasCorpusBody(endpoint)) {
+            this.corpusBody = mix.corpus().next(this.corpusBody, random);
+            body = this.corpusBody;
+        }
+        exchange.write(this.id, endpoint, body, whenFired, intendedTime);
+        this.id++;
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!pendingSends.isEmpty() && channel.isWritable()) {
+            long now = System.nanoTime();
+            if (now > end) {
+                // writable after the end of the phase: sending them would overlap the next one
+                localRecorder.recordDropped(now, pendingSends.size());
+                pendingSends.clear();
+            } else {
+                while (!pendingSends.isEmpty() && channel.isWritable()) {
+                    long intendedTime = pendingSends.peekIntendedTime();
+                    pendingSends.remove();
+                    localRecorder.recordDelayed(now);
+                    // the service time starts now, the response time still starts at the intended time
+                    writeRequest(now, intendedTime);
                 }
-            });
-            this.id++;
+                channel.flush();
+            }
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    /**
+     * The requests waiting for a response become errors and the queued ones are dropped, otherwise the phase would
+     * wait for them forever.
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        this.running = false;
+        if (this.localRecorder != null) {
+            long now = System.nanoTime();
+            for (int i = 0; i < exchange.inflight(); i++) {
+                localRecorder.recordError(now);
+            }
+            for (int i = 0; i < pendingSends.size(); i++) {
+                localRecorder.recordDropped(now);
+            }
         }
+        exchange.clear();
+        pendingSends.clear();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        exchange();
+        super.handlerAdded(ctx);
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) throws Exception {
-        Long[] data = this.latencyQueue.poll();
-        assert data != null;
-        long requestId = data[0];
-        long requestStartTime = data[1];
-        long requestIntendedTime = data[1];
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        exchange.release();
+        super.handlerRemoved(ctx);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, Object msg) throws Exception {
+        exchange.read(msg);
+    }
+
+    /**
+     * @param endpoint index in the {@link RequestMix}
+     * @param headersTime when the response headers arrived
+     * @param body null when it is not kept
+     */
+    void responseCompleted(long requestId, int endpoint, long requestStartTime, long requestIntendedTime, int status, long headersTime, CharSequence body) {
         boolean success = true;
-        if (msg.status().code() != 200) {
+        if (status != 200) {
             success = false;
         }
-        this.localRecorder.recordValue(requestStartTime, System.nanoTime() - requestIntendedTime, success);
+        long now = System.nanoTime();
+        this.localRecorder.recordValue(requestStartTime, now - requestIntendedTime, now - requestStartTime, headersTime - requestStartTime, success);
+        if (this.mix.size() > 1) {
+            this.localRecorder.recordEndpoint(endpoint, now - requestIntendedTime, success);
+        }
+        this.localRecorder.recordBytes(requestStartTime, this.bytesRead);
+        this.bytesRead = 0;
         if (log.isTraceEnabled()) {
-            String responseBody = msg.content().toString(io.netty.util.CharsetUtil.UTF_8);
-            log.trace("Response [" + msg.status().code() + "]: " + responseBody);
+            log.trace("Response [" + status + "]: " + body);
         }
-        if (this.assertResponseOperation) {
-            String responseBody = msg.content().toString(io.netty.util.CharsetUtil.UTF_8);
-            if (!responseBody.equals(String.valueOf(requestId))) {
+        // the response to a HEAD has no body to check
+        if (this.assertResponseOperation && !this.mix.endpoint(endpoint).isHead()) {
+            if (!body.toString().equals(String.valueOf(requestId))) {
                 throw new RuntimeException("Invalid id");
             }
         }
+        onResponse();
+    }
+
+    /**
+     * A request that will never have a response, e.g. its stream was reset
+     */
+    void responseFailed(int endpoint) {
+        this.localRecorder.recordError(System.nanoTime());
+        if (this.mix.size() > 1) {
+            this.localRecorder.recordEndpointError(endpoint);
+        }
+        onResponse();
+    }
+
+    /**
+     * Called on the event loop after a response was recorded
+     */
+    protected void onResponse() {
     }
 
-    public Statistic collectStatistics() {
-        return new Statistic(this.localRecorder.getHistograms(), this.localRecorder.getErrors());
+    /**
+     * @return the codec of the protocol, it goes between {@link #bytesReadCounter()} and this handler
+     */
+    public ChannelHandler[] protocolHandlers() {
+        return exchange().handlers();
+    }
+
+    /**
+     * Counts the bytes read from the socket, headers included. It goes before the HTTP codec in the pipeline.
+     */
+    public ChannelHandler bytesReadCounter() {
+        return new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                if (msg instanceof ByteBuf buf) {
+                    bytesRead += buf.readableBytes();
+                }
+                ctx.fireChannelRead(msg);
+            }
+        };
     }
 
     public boolean hasInflightRequests() {
-        return !this.latencyQueue.isEmpty();
+        return this.exchange.inflight() > 0 || !this.pendingSends.isEmpty();
+    }
+
+    /**
+     * @return the requests waiting for a response plus the ones waiting to be sent
+     */
+    public int inflightRequests() {
+        return this.exchange.inflight() + this.pendingSends.size();
+    }
+
+    public boolean isWritable() {
+        return this.pendingSends.isEmpty() && this.channel.isWritable();
     }
 
     public long getEnd() {
         return this.end;
     }
+
+    public EventLoop getEventLoop() {
+        return this.eventLoop;
+    }
 }
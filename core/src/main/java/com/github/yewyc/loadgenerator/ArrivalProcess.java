@@ -0,0 +1,104 @@
+package com.github.yewyc.loadgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * How the intended sends of the open model (wrk3) are spaced.
+ * <p>
+ * The gaps are computed once, before the phase, and have a mean of 1: the dispatcher multiplies them by its interval,
+ * so the configured rate is kept whatever the shape. The dispatcher cycles through them, so getting the next intended
+ * time is an array read.
+ */
+public interface ArrivalProcess {
+
+    // enough to not notice the cycle, small enough to stay in the cache
+    int SCHEDULE_SIZE = 1 << 16;
+
+    /**
+     * @param seed different for each event loop, so they don't fire together
+     * @return the inter-arrival gaps, with a mean of 1
+     */
+    double[] unitGaps(long seed);
+
+    /**
+     * Every gap is the interval. It is the wrk2 schedule.
+     */
+    static ArrivalProcess uniform() {
+        return seed -> new double[]{1.0};
+    }
+
+    /**
+     * Exponential gaps: independent users, like a Poisson process. The bursts build queues that a uniform schedule
+     * never shows.
+     */
+    static ArrivalProcess poisson() {
+        return seed -> {
+            SplittableRandom random = new SplittableRandom(seed);
+            double[] gaps = new double[SCHEDULE_SIZE];
+            for (int i = 0; i < gaps.length; i++) {
+                // 1 - u is in (0, 1], so the log is finite
+                gaps[i] = -Math.log(1.0 - random.nextDouble());
+            }
+            return normalize(gaps);
+        };
+    }
+
+    /**
+     * The gaps of a recorded trace, one per line, in any unit; lines starting with # are ignored. Only the shape is
+     * kept, the rate comes from the benchmark. Each event loop starts at a different position of the trace.
+     */
+    static ArrivalProcess replay(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath());
+        double[] trace = lines.stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .mapToDouble(Double::parseDouble)
+                .toArray();
+        if (trace.length == 0) {
+            throw new IllegalArgumentException("No inter-arrival gaps in " + file);
+        }
+        for (double gap : trace) {
+            if (gap < 0) {
+                throw new IllegalArgumentException("Negative inter-arrival gap in " + file + ": " + gap);
+            }
+        }
+        double[] normalized = normalize(trace);
+        return seed -> {
+            int offset = (int) Math.floorMod(seed * 7919, (long) normalized.length);
+            double[] gaps = new double[normalized.length];
+            System.arraycopy(normalized, offset, gaps, 0, normalized.length - offset);
+            System.arraycopy(normalized, 0, gaps, normalized.length - offset, offset);
+            return gaps;
+        };
+    }
+
+    /**
+     * @param value uniform, poisson or replay:&lt;file&gt;
+     */
+    static ArrivalProcess parse(String value) throws IOException {
+        if (value.startsWith("replay:")) {
+            return replay(new File(value.substring("replay:".length())));
+        }
+        return switch (value) {
+            case "uniform" -> uniform();
+            case "poisson" -> poisson();
+            default -> throw new IllegalArgumentException("Unknown arrival process: " + value);
+        };
+    }
+
+    private static double[] normalize(double[] gaps) {
+        double mean = Arrays.stream(gaps).average().orElseThrow();
+        if (mean == 0) {
+            throw new IllegalArgumentException("The inter-arrival gaps must not be all 0");
+        }
+        for (int i = 0; i < gaps.length; i++) {
+            gaps[i] /= mean;
+        }
+        return gaps;
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.yewyc.loadgenerator;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Request bodies memory-mapped from a file, so a corpus larger than the heap costs no heap. The file is a sequence of
+ * bodies, each one a 4 bytes big-endian length followed by its bytes.
+ * <p>
+ * A body is written as a read-only slice of the mapping: it is neither copied nor released. The file is mapped in
+ * regions of up to 2GB that end on a body, since a buffer can't be larger.
+ */
+public class BodyCorpus {
+
+    public enum Order {
+        // each connection goes through the bodies in the file order, from a random one
+        round_robin,
+        random
+    }
+
+    private static final int LENGTH_BYTES = 4;
+
+    private final Order order;
+    private final ByteBuf[] regions;
+    // by body
+    private final int[] bodyRegions;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    private BodyCorpus(Order order, ByteBuf[] regions, int[] bodyRegions, int[] offsets, int[] lengths) {
+        this.order = order;
+        this.regions = regions;
+        this.bodyRegions = bodyRegions;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    public static BodyCorpus map(File file, Order order) throws IOException {
+        if (order == null) {
+            throw new IllegalArgumentException("order must not be null");
+        }
+        List<ByteBuf> regions = new ArrayList<>();
+        int[] bodyRegions = new int[1024];
+        int[] offsets = new int[1024];
+        int[] lengths = new int[1024];
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                // from the first body that didn't fit in the previous region. The mapping outlives the channel
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Integer.MAX_VALUE, size - position));
+                int offset = 0;
+                while (offset + LENGTH_BYTES <= region.capacity()) {
+                    int length = region.getInt(offset);
+                    if (length < 0) {
+                        throw new IOException("Invalid body length " + length + " at " + (position + offset) + " of " + file);
+                    }
+                    if ((long) offset + LENGTH_BYTES + length > region.capacity()) {
+                        break;
+                    }
+                    if (count == lengths.length) {
+                        bodyRegions = Arrays.copyOf(bodyRegions, count * 2);
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                        lengths = Arrays.copyOf(lengths, count * 2);
+                    }
+                    bodyRegions[count] = regions.size();
+                    offsets[count] = offset + LENGTH_BYTES;
+                    lengths[count] = length;
+                    count++;
+                    offset += LENGTH_BYTES + length;
+                }
+                if (offset < region.capacity() && position + region.capacity() == size) {
+                    throw new IOException("Truncated body at " + (position + offset) + " of " + file);
+                }
+                if (offset == 0) {
+                    throw new IOException("Body larger than 2GB at " + position + " of " + file);
+                }
+                regions.add(Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(region)));
+                position += offset;
+            }
+        }
+        if (count == 0) {
+            throw new IOException("No bodies in " + file);
+        }
+        return new BodyCorpus(order, regions.toArray(new ByteBuf[0]), Arrays.copyOf(bodyRegions, count), Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count));
+    }
+
+    /**
+     * @return the index of a body to start from
+     */
+    public int first(SplittableRandom random) {
+        return random.nextInt(lengths.length);
+    }
+
+    /**
+     * @param previous the index of the body sent before
+     * @return the index of the body to send now
+     */
+    public int next(int previous, SplittableRandom random) {
+        return switch (order) {
+            case round_robin -> previous + 1 == lengths.length ? 0 : previous + 1;
+            case random -> random.nextInt(lengths.length);
+        };
+    }
+
+    /**
+     * @return the body, a slice of the mapping the channel can write and release
+     */
+    public ByteBuf body(int index) {
+        return regions[bodyRegions[index]].slice(offsets[index], lengths[index]);
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int size() {
+        return lengths.length;
+    }
+
+    public Order order() {
+        return order;
+    }
+}
@@ -1,13 +1,13 @@
 package com.github.yewyc.loadgenerator;
 
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.FullHttpResponse;
 
 import java.net.URL;
+import java.util.SplittableRandom;
 
 /**
- * Closed Model - wrk - waits for response before next request
+ * Closed Model - wrk - waits for response before next request. With pipelining, it keeps that many requests waiting
+ * for a response.
  */
 public class ClosedLoadGenerator extends AbstractLoadGenerator {
 
@@ -15,15 +15,31 @@ public class ClosedLoadGenerator extends AbstractLoadGenerator {
         super(urlBase, channel);
     }
 
+    public ClosedLoadGenerator(URL urlBase, Channel channel, int pipeline, Protocol protocol) {
+        super(urlBase, channel, pipeline, protocol);
+    }
+
+    public ClosedLoadGenerator(URL urlBase, Channel channel, int pipeline, Protocol protocol, RequestMix mix, SplittableRandom random) {
+        super(urlBase, channel, pipeline, protocol, mix, random);
+    }
+
     @Override
     protected void scheduleNextRequest() {
-        long now = System.nanoTime();
-        executeRequest(now, now);
+        boolean written = false;
+        while (inflightRequests() < pipeline) {
+            long now = System.nanoTime();
+            if (!executeRequest(now, now)) {
+                break;
+            }
+            written = true;
+        }
+        if (written) {
+            flush();
+        }
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) throws Exception {
-        super.channelRead0(ctx, msg);
-        eventLoop.execute(this::scheduleNextRequestIfRunning);
+    protected void onResponse() {
+        eventLoop.execute(scheduleNextRequestIfRunningTask);
     }
 }
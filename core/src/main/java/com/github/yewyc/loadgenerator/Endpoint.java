@@ -0,0 +1,49 @@
+package com.github.yewyc.loadgenerator;
+
+import java.util.Map;
+
+/**
+ * One request of a {@link RequestMix}
+ *
+ * @param method HTTP method, e.g. GET or POST
+ * @param path Path and query, relative to the host of the url
+ * @param headers Sent with the request, after Host
+ * @param body Empty without a body
+ * @param weight Share of the requests, relative to the other endpoints
+ */
+public record Endpoint(String method, String path, Map<String, String> headers, byte[] body, int weight) {
+
+    public Endpoint {
+        if (method == null || !method.matches("[A-Z]+")) {
+            throw new IllegalArgumentException("method must be upper case letters, got: " + method);
+        }
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("path must start with /, got: " + path);
+        }
+        if (headers == null) {
+            throw new IllegalArgumentException("headers must not be null");
+        }
+        headers = Map.copyOf(headers);
+        if (body == null) {
+            throw new IllegalArgumentException("body must not be null");
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be greater than 0, got: " + weight);
+        }
+    }
+
+    public static Endpoint get(String path) {
+        return new Endpoint("GET", path, Map.of(), new byte[0], 1);
+    }
+
+    /**
+     * @return the name in the report
+     */
+    public String name() {
+        return method + " " + path;
+    }
+
+    public boolean isHead() {
+        return method.equals("HEAD");
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.yewyc.loadgenerator;
+
+import com.github.yewyc.stats.SequentialTimeSeriesRecorder;
+import io.netty.channel.EventLoop;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the stalls of an event loop, like jHiccup: a task that should wake up every millisecond records how late it
+ * was. A GC pause, a safepoint, a starved CPU or a long batch of reads delay it as much as they delay the sends, so it
+ * shows when the load generator itself was the bottleneck, in any model.
+ * <p>
+ * Not thread safe. Apart from {@link #start(Duration)} and {@link #stop()} it runs on the event loop.
+ */
+public class HiccupProbe {
+
+    private static final long RESOLUTION_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final EventLoop eventLoop;
+    private final SequentialTimeSeriesRecorder recorder;
+    private final Runnable wakeUpTask = this::wakeUp;
+
+    private boolean running;
+    private long end;
+    private long expected;
+    // the next wake-up, cancelled by stop: a wake-up of the previous phase would otherwise run a second chain
+    private ScheduledFuture<?> wakeUp;
+
+    /**
+     * @param recorder of the event loop
+     */
+    public HiccupProbe(EventLoop eventLoop, SequentialTimeSeriesRecorder recorder) {
+        this.eventLoop = eventLoop;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Must be called after the recorder was started
+     */
+    public void start(Duration duration) {
+        assert !eventLoop.inEventLoop();
+        eventLoop.execute(() -> {
+            cancelWakeUp();
+            this.running = true;
+            long now = System.nanoTime();
+            this.end = now + duration.toNanos();
+            this.expected = now + RESOLUTION_NS;
+            this.wakeUp = eventLoop.schedule(wakeUpTask, RESOLUTION_NS, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    /**
+     * The phase may last longer than its duration while it waits for the last responses: the probe stops before the
+     * recorder is read
+     */
+    public void stop() {
+        assert !eventLoop.inEventLoop();
+        eventLoop.execute(() -> {
+            this.running = false;
+            cancelWakeUp();
+        });
+    }
+
+    private void cancelWakeUp() {
+        if (this.wakeUp != null) {
+            this.wakeUp.cancel(false);
+            this.wakeUp = null;
+        }
+    }
+
+    private void wakeUp() {
+        if (!running) {
+            return;
+        }
+        long now = System.nanoTime();
+        recorder.recordHiccup(now, now - expected, RESOLUTION_NS);
+        if (now < end) {
+            this.expected = now + RESOLUTION_NS;
+            this.wakeUp = eventLoop.schedule(wakeUpTask, RESOLUTION_NS, TimeUnit.NANOSECONDS);
+        } else {
+            this.running = false;
+            this.wakeUp = null;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.yewyc.loadgenerator;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseDecoder;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * HTTP/1.1. The requests of the mix are encoded once, when the connection is created, and each one is written as a
+ * pooled duplicate of its bytes: there is no request encoder. A body of the {@link BodyCorpus} is written as a slice of the
+ * mapping after the head and its Content-Length. The response arrives in pieces: the status line and headers,
+ * then the body chunks. The body is released as soon as it is read, only the status code and the time of the headers
+ * are kept.
+ */
+class Http1Exchange extends HttpExchange {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] CONTENT_LENGTH = "Content-Length: ".getBytes(CharsetUtil.US_ASCII);
+
+    private final AbstractLoadGenerator generator;
+    private final Channel channel;
+    private final RequestMix mix;
+    // by endpoint: the whole request, and the same split before the end of the headers for the request id
+    private final ByteBuf[] requests;
+    private final ByteBuf[] requestHeads;
+    private final ByteBuf[] requestTails;
+    private final boolean requestIdHeader;
+    private final InflightQueue inflightQueue = new InflightQueue();
+
+    // of the response being read
+    private int responseStatus;
+    private long responseHeadersTime;
+    // null when the body is not kept
+    private final StringBuilder responseBody;
+
+    /**
+     * @param requestIdHeader sends the id of each request, the test server answers it in the body
+     * @param keepResponseBody only to check or log it
+     */
+    Http1Exchange(AbstractLoadGenerator generator, Channel channel, URL urlBase, RequestMix mix, boolean requestIdHeader, boolean keepResponseBody) {
+        /*
+         * If you use a single AttributeKey, you are effectively using a single variable to store the "intended time."
+         * When you send multiple requests in parallel (pipelining), the second request will overwrite the
+         * start time of the first request.
+         *
+         * Because HTTP/1.1 guarantees that responses arrive in the same order requests were sent (FIFO),
+         * you should use a simple Queue instead of a channel attribute. See InflightQueue.
+         *
+         */
+        this.generator = generator;
+        this.channel = channel;
+        this.mix = mix;
+        this.requests = new ByteBuf[mix.size()];
+        this.requestHeads = new ByteBuf[mix.size()];
+        this.requestTails = new ByteBuf[mix.size()];
+        for (int i = 0; i < mix.size(); i++) {
+            Endpoint endpoint = mix.endpoint(i);
+            byte[] head = head(endpoint, urlBase.getHost());
+            requestHeads[i] = pooled(head);
+            requestTails[i] = pooled(CRLF, endpoint.body());
+            requests[i] = pooled(head, CRLF, endpoint.body());
+        }
+        this.requestIdHeader = requestIdHeader;
+        this.responseBody = keepResponseBody ? new StringBuilder() : null;
+    }
+
+    // the request line and the headers, without the empty line that ends them
+    private static byte[] head(Endpoint endpoint, String host) {
+        StringBuilder head = new StringBuilder();
+        head.append(endpoint.method()).append(' ').append(endpoint.path()).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(host).append("\r\n");
+        head.append("Connection: keep-alive\r\n");
+        for (Map.Entry<String, String> header : endpoint.headers().entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (endpoint.body().length > 0) {
+            head.append("Content-Length: ").append(endpoint.body().length).append("\r\n");
+        }
+        return head.toString().getBytes(CharsetUtil.US_ASCII);
+    }
+
+    /*
+     * Direct, so the socket writes it without a copy. Shared by the writes, which only move their own indexes: each one
+     * is a retained duplicate, recycled when the channel releases it. The pooled allocator, not the one of the channel,
+     * because only its duplicates are recycled.
+     */
+    private static ByteBuf pooled(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(length);
+        for (byte[] part : parts) {
+            buf.writeBytes(part);
+        }
+        return buf;
+    }
+
+    @Override
+    ChannelHandler[] handlers() {
+        return new ChannelHandler[]{new ResponseDecoder()};
+    }
+
+    @Override
+    void write(long id, int endpoint, int body, long whenFired, long intendedTime) {
+        this.inflightQueue.add(id, whenFired, intendedTime, endpoint);
+        if (body >= 0) {
+            BodyCorpus corpus = this.mix.corpus();
+            channel.write(this.requestHeads[endpoint].retainedDuplicate(), channel.voidPromise());
+            // the end of the headers, pooled
+            ByteBuf headersEnd = channel.alloc().directBuffer(64);
+            headersEnd.writeBytes(CONTENT_LENGTH);
+            writeDecimal(headersEnd, corpus.length(body));
+            headersEnd.writeBytes(CRLF);
+            if (this.requestIdHeader) {
+                headersEnd.writeCharSequence("X-Request-Id: " + id + "\r\n", CharsetUtil.US_ASCII);
+            }
+            headersEnd.writeBytes(CRLF);
+            channel.write(headersEnd, channel.voidPromise());
+            channel.write(corpus.body(body), channel.voidPromise());
+        } else if (this.requestIdHeader) {
+            channel.write(this.requestHeads[endpoint].retainedDuplicate(), channel.voidPromise());
+            channel.write(Unpooled.copiedBuffer("X-Request-Id: " + id + "\r\n", CharsetUtil.US_ASCII), channel.voidPromise());
+            channel.write(this.requestTails[endpoint].retainedDuplicate(), channel.voidPromise());
+        } else {
+            channel.write(this.requests[endpoint].retainedDuplicate(), channel.voidPromise());
+        }
+    }
+
+    // without the String of Integer.toString
+    private static void writeDecimal(ByteBuf buf, int value) {
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buf.writeByte('0' + value / divisor % 10);
+        }
+    }
+
+    @Override
+    void read(Object msg) {
+        if (msg instanceof HttpResponse response) {
+            this.responseStatus = response.status().code();
+            this.responseHeadersTime = System.nanoTime();
+            if (this.responseBody != null) {
+                this.responseBody.setLength(0);
+            }
+        }
+        if (msg instanceof HttpContent content) {
+            if (this.responseBody != null) {
+                this.responseBody.append(content.content().toString(CharsetUtil.UTF_8));
+            }
+            if (msg instanceof LastHttpContent) {
+                assert !this.inflightQueue.isEmpty();
+                long requestId = this.inflightQueue.peekId();
+                int endpoint = this.inflightQueue.peekEndpoint();
+                long requestStartTime = this.inflightQueue.peekSendTime();
+                long requestIntendedTime = this.inflightQueue.peekIntendedTime();
+                this.inflightQueue.remove();
+                generator.responseCompleted(requestId, endpoint, requestStartTime, requestIntendedTime, this.responseStatus, this.responseHeadersTime, this.responseBody);
+            }
+        }
+    }
+
+    @Override
+    int inflight() {
+        return this.inflightQueue.size();
+    }
+
+    @Override
+    void clear() {
+        this.inflightQueue.clear();
+    }
+
+    @Override
+    void release() {
+        for (int i = 0; i < this.requests.length; i++) {
+            this.requests[i].release();
+            this.requestHeads[i].release();
+            this.requestTails[i].release();
+        }
+    }
+
+    /**
+     * Without the request encoder of HttpClientCodec, the decoder learns from the in-flight queue that a response
+     * answers a HEAD: it has the headers of a GET but no body.
+     */
+    private class ResponseDecoder extends HttpResponseDecoder {
+
+        @Override
+        protected boolean isContentAlwaysEmpty(HttpMessage msg) {
+            if (!inflightQueue.isEmpty() && mix.endpoint(inflightQueue.peekEndpoint()).isHead()) {
+                return true;
+            }
+            return super.isContentAlwaysEmpty(msg);
+        }
+    }
+}
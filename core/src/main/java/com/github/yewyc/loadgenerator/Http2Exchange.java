@@ -0,0 +1,201 @@
+package com.github.yewyc.loadgenerator;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.DefaultHttp2WindowUpdateFrame;
+import io.netty.handler.codec.http2.Http2ChannelDuplexHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2FrameStream;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2ResetFrame;
+import io.netty.util.AsciiString;
+import io.netty.util.CharsetUtil;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HTTP/2 over cleartext with prior knowledge: every request is a stream of the connection, so the in-flight requests
+ * are found by stream id instead of by order. The requests above the concurrent streams the server allows wait in the
+ * codec until a stream closes.
+ * <p>
+ * The headers of each endpoint of the mix are built once; HPACK encodes them per connection, so they can't be encoded
+ * ahead. A body is sent as a duplicate of its bytes, a body of the {@link BodyCorpus} as a slice of the mapping. The
+ * shared headers can't have the length of the corpus bodies, so their requests go without content-length: the end
+ * of the stream ends the body.
+ */
+class Http2Exchange extends HttpExchange {
+
+    private static final AsciiString REQUEST_ID = AsciiString.cached("x-request-id");
+
+    private final AbstractLoadGenerator generator;
+    private final Channel channel;
+    // by endpoint
+    private final Http2Headers[] headers;
+    private final ByteBuf[] bodies;
+    // null without one
+    private final BodyCorpus corpus;
+    private final boolean requestIdHeader;
+    private final StreamFactory streamFactory = new StreamFactory();
+    private final InflightStreams inflightStreams = new InflightStreams();
+    // by stream id. null when the bodies are not kept
+    private final Map<Integer, StringBuilder> responseBodies;
+
+    /**
+     * @param requestIdHeader sends the id of each request, the test server answers it in the body
+     * @param keepResponseBody only to check or log it
+     */
+    Http2Exchange(AbstractLoadGenerator generator, Channel channel, URL urlBase, RequestMix mix, boolean requestIdHeader, boolean keepResponseBody) {
+        this.generator = generator;
+        this.channel = channel;
+        String authority = urlBase.getPort() == -1 ? urlBase.getHost() : urlBase.getHost() + ":" + urlBase.getPort();
+        this.headers = new Http2Headers[mix.size()];
+        this.bodies = new ByteBuf[mix.size()];
+        for (int i = 0; i < mix.size(); i++) {
+            Endpoint endpoint = mix.endpoint(i);
+            // shared by the requests: the codec doesn't change them
+            Http2Headers endpointHeaders = new DefaultHttp2Headers()
+                    .method(endpoint.method())
+                    .path(endpoint.path())
+                    .scheme(urlBase.getProtocol())
+                    .authority(authority);
+            // HTTP/2 header names are lower case
+            endpoint.headers().forEach((name, value) -> endpointHeaders.add(AsciiString.of(name).toLowerCase(), value));
+            if (endpoint.body().length > 0) {
+                endpointHeaders.setInt(HttpHeaderNames.CONTENT_LENGTH, endpoint.body().length);
+            }
+            this.headers[i] = endpointHeaders;
+            this.bodies[i] = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(endpoint.body()).asReadOnly());
+        }
+        this.corpus = mix.corpus();
+        this.requestIdHeader = requestIdHeader;
+        this.responseBodies = keepResponseBody ? new HashMap<>() : null;
+    }
+
+    @Override
+    ChannelHandler[] handlers() {
+        return new ChannelHandler[]{
+                Http2FrameCodecBuilder.forClient().encoderEnforceMaxConcurrentStreams(true).build(),
+                streamFactory
+        };
+    }
+
+    @Override
+    void write(long id, int endpoint, int body, long whenFired, long intendedTime) {
+        Http2FrameStream stream = streamFactory.newStream();
+        Http2Headers requestHeaders = this.headers[endpoint];
+        if (this.requestIdHeader) {
+            requestHeaders = new DefaultHttp2Headers().add(requestHeaders).set(REQUEST_ID, String.valueOf(id));
+        }
+        ByteBuf content = body >= 0 ? this.corpus.body(body) : this.bodies[endpoint].duplicate();
+        boolean hasBody = content.isReadable();
+        // the codec adds its own listeners to the promise of a frame, it can't be the void one
+        channel.write(new DefaultHttp2HeadersFrame(requestHeaders, !hasBody).stream(stream)).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        // the codec gives the stream its id while it writes the headers, unless the server is going away
+        if (Http2CodecUtil.isStreamIdValid(stream.id())) {
+            this.inflightStreams.add(stream.id(), id, whenFired, intendedTime, endpoint);
+            if (hasBody) {
+                channel.write(new DefaultHttp2DataFrame(content, true).stream(stream)).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            }
+        } else {
+            generator.responseFailed(endpoint);
+            // no stream can be opened anymore: closing it stops the strategy from sending on it
+            channel.close();
+        }
+    }
+
+    @Override
+    void read(Object msg) {
+        if (msg instanceof Http2HeadersFrame frame) {
+            int slot = this.inflightStreams.find(frame.stream().id());
+            if (slot < 0) {
+                return;
+            }
+            CharSequence status = frame.headers().status();
+            // the trailers don't have one, and the 1xx are followed by the final headers
+            if (status != null) {
+                int code = AsciiString.of(status).parseInt();
+                if (code >= 200) {
+                    this.inflightStreams.headers(slot, code, System.nanoTime());
+                }
+            }
+            if (frame.isEndStream()) {
+                responseCompleted(slot);
+            }
+        } else if (msg instanceof Http2DataFrame frame) {
+            int slot = this.inflightStreams.find(frame.stream().id());
+            if (slot < 0) {
+                return;
+            }
+            if (this.responseBodies != null) {
+                this.responseBodies.computeIfAbsent(frame.stream().id(), k -> new StringBuilder()).append(frame.content().toString(CharsetUtil.UTF_8));
+            }
+            if (frame.isEndStream()) {
+                // the codec gives the window of a closed stream back
+                responseCompleted(slot);
+            } else if (frame.initialFlowControlledBytes() > 0) {
+                // the body is already released: the server can send more. The codec flushes after the read
+                channel.write(new DefaultHttp2WindowUpdateFrame(frame.initialFlowControlledBytes()).stream(frame.stream()));
+            }
+        } else if (msg instanceof Http2ResetFrame frame) {
+            int slot = this.inflightStreams.find(frame.stream().id());
+            if (slot >= 0) {
+                int endpoint = this.inflightStreams.endpoint(slot);
+                this.inflightStreams.remove(slot);
+                if (this.responseBodies != null) {
+                    this.responseBodies.remove(frame.stream().id());
+                }
+                generator.responseFailed(endpoint);
+            }
+        }
+    }
+
+    private void responseCompleted(int slot) {
+        int streamId = this.inflightStreams.streamId(slot);
+        long requestId = this.inflightStreams.id(slot);
+        int endpoint = this.inflightStreams.endpoint(slot);
+        long requestStartTime = this.inflightStreams.sendTime(slot);
+        long requestIntendedTime = this.inflightStreams.intendedTime(slot);
+        int status = this.inflightStreams.status(slot);
+        long headersTime = this.inflightStreams.headersTime(slot);
+        this.inflightStreams.remove(slot);
+        StringBuilder body = null;
+        if (this.responseBodies != null) {
+            body = this.responseBodies.remove(streamId);
+            if (body == null) {
+                body = new StringBuilder();
+            }
+        }
+        generator.responseCompleted(requestId, endpoint, requestStartTime, requestIntendedTime, status, headersTime, body);
+    }
+
+    @Override
+    int inflight() {
+        return this.inflightStreams.size();
+    }
+
+    @Override
+    void clear() {
+        this.inflightStreams.clear();
+        if (this.responseBodies != null) {
+            this.responseBodies.clear();
+        }
+    }
+
+    /**
+     * The codec only lets a handler of its pipeline create a stream
+     */
+    private static class StreamFactory extends Http2ChannelDuplexHandler {
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.yewyc.loadgenerator;
+
+import io.netty.channel.ChannelHandler;
+
+/**
+ * Writes the requests of a connection and matches the responses with them, for one {@link Protocol}. The load
+ * generator decides when a request is sent, the exchange how.
+ * <p>
+ * Not thread safe. It must be used only from the channel event loop.
+ */
+abstract class HttpExchange {
+
+    /**
+     * @return the handlers between the socket and the load generator, new ones for each connection
+     */
+    abstract ChannelHandler[] handlers();
+
+    /**
+     * Writes the request without flushing it. The writes have no promise to allocate: a failed one is fired through the
+     * pipeline, as an exception.
+     *
+     * @param endpoint index in the {@link RequestMix}
+     * @param body index in the {@link BodyCorpus}, or -1 when the endpoint has its own body
+     */
+    abstract void write(long id, int endpoint, int body, long whenFired, long intendedTime);
+
+    /**
+     * Reads a message of the codec. A completed response goes to
+     * {@link AbstractLoadGenerator#responseCompleted(long, int, long, long, int, long, CharSequence)}.
+     */
+    abstract void read(Object msg);
+
+    /**
+     * @return the requests written and not answered yet
+     */
+    abstract int inflight();
+
+    abstract void clear();
+
+    /**
+     * Releases the buffers of the connection, once it is removed from the pipeline
+     */
+    void release() {
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.yewyc.loadgenerator;
+
+/**
+ * FIFO of the requests sent but not yet answered on a single connection.
+ * <p>
+ * HTTP/1.1 answers in the order requests were sent, so a queue is enough to match a response with its request.
+ * The entries are kept in parallel primitive columns of a power-of-two ring buffer, so adding and removing an entry
+ * does not allocate. The buffer doubles when it is full; it never shrinks, so after the first seconds of a phase it
+ * has reached its working size.
+ * <p>
+ * Not thread safe. It must be used only from the channel event loop.
+ */
+public class InflightQueue {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] ids;
+    private long[] sendTimes;
+    private long[] intendedTimes;
+    // of the RequestMix
+    private int[] endpoints;
+    private int mask;
+    private int head;
+    private int size;
+
+    public InflightQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public InflightQueue(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, initialCapacity) - 1) << 1;
+        this.ids = new long[capacity];
+        this.sendTimes = new long[capacity];
+        this.intendedTimes = new long[capacity];
+        this.endpoints = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public void add(long id, long sendTime, long intendedTime) {
+        add(id, sendTime, intendedTime, 0);
+    }
+
+    public void add(long id, long sendTime, long intendedTime, int endpoint) {
+        if (size == ids.length) {
+            grow();
+        }
+        int index = (head + size) & mask;
+        ids[index] = id;
+        sendTimes[index] = sendTime;
+        intendedTimes[index] = intendedTime;
+        endpoints[index] = endpoint;
+        size++;
+    }
+
+    /**
+     * Drops the oldest entry. Read it first with {@link #peekId()}, {@link #peekSendTime()}, {@link #peekIntendedTime()} and
+     * {@link #peekEndpoint()}.
+     */
+    public void remove() {
+        assert size > 0;
+        head = (head + 1) & mask;
+        size--;
+    }
+
+    public long peekId() {
+        assert size > 0;
+        return ids[head];
+    }
+
+    public long peekSendTime() {
+        assert size > 0;
+        return sendTimes[head];
+    }
+
+    public long peekIntendedTime() {
+        assert size > 0;
+        return intendedTimes[head];
+    }
+
+    public int peekEndpoint() {
+        assert size > 0;
+        return endpoints[head];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        int capacity = ids.length << 1;
+        ids = copy(ids, capacity);
+        sendTimes = copy(sendTimes, capacity);
+        intendedTimes = copy(intendedTimes, capacity);
+        endpoints = copy(endpoints, capacity);
+        head = 0;
+        mask = capacity - 1;
+    }
+
+    // unwraps the ring so the oldest entry lands at index 0
+    private long[] copy(long[] source, int capacity) {
+        long[] target = new long[capacity];
+        int firstPart = Math.min(size, source.length - head);
+        System.arraycopy(source, head, target, 0, firstPart);
+        System.arraycopy(source, 0, target, firstPart, size - firstPart);
+        return target;
+    }
+
+    private int[] copy(int[] source, int capacity) {
+        int[] target = new int[capacity];
+        int firstPart = Math.min(size, source.length - head);
+        System.arraycopy(source, head, target, 0, firstPart);
+        System.arraycopy(source, 0, target, firstPart, size - firstPart);
+        return target;
+    }
+}
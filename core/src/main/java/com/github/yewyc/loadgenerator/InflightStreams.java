@@ -0,0 +1,188 @@
+package com.github.yewyc.loadgenerator;
+
+import java.util.Arrays;
+
+/**
+ * The requests sent but not yet answered on an HTTP/2 connection, by stream id.
+ * <p>
+ * The streams of a connection are answered in any order, so unlike {@link InflightQueue} an entry is looked up by its
+ * stream id. The entries are kept in parallel primitive columns of an open addressing table with linear probing, so
+ * adding and removing an entry does not allocate. The table doubles when it is half full; it never shrinks.
+ * <p>
+ * Not thread safe. It must be used only from the channel event loop.
+ */
+public class InflightStreams {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // 0 is a free slot: the streams of a client are odd
+    private int[] streamIds;
+    private long[] ids;
+    private long[] sendTimes;
+    private long[] intendedTimes;
+    // of the RequestMix
+    private int[] endpoints;
+    // 0 until the response headers arrive
+    private int[] statuses;
+    private long[] headersTimes;
+    private int mask;
+    private int size;
+
+    public InflightStreams() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public InflightStreams(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(2, initialCapacity) - 1) << 1);
+    }
+
+    private void allocate(int capacity) {
+        this.streamIds = new int[capacity];
+        this.ids = new long[capacity];
+        this.sendTimes = new long[capacity];
+        this.intendedTimes = new long[capacity];
+        this.endpoints = new int[capacity];
+        this.statuses = new int[capacity];
+        this.headersTimes = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public void add(int streamId, long id, long sendTime, long intendedTime, int endpoint) {
+        assert streamId > 0;
+        if ((size + 1) * 2 > streamIds.length) {
+            grow();
+        }
+        insert(streamId, id, sendTime, intendedTime, endpoint, 0, 0);
+    }
+
+    private void insert(int streamId, long id, long sendTime, long intendedTime, int endpoint, int status, long headersTime) {
+        int slot = home(streamId);
+        while (streamIds[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        streamIds[slot] = streamId;
+        ids[slot] = id;
+        sendTimes[slot] = sendTime;
+        intendedTimes[slot] = intendedTime;
+        endpoints[slot] = endpoint;
+        statuses[slot] = status;
+        headersTimes[slot] = headersTime;
+        size++;
+    }
+
+    /**
+     * @return the slot of the stream, or -1 if it is not in flight
+     */
+    public int find(int streamId) {
+        int slot = home(streamId);
+        while (streamIds[slot] != 0) {
+            if (streamIds[slot] == streamId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Drops the entry of a slot. Read it first: the slot can hold another stream after it.
+     */
+    public void remove(int slot) {
+        assert streamIds[slot] != 0;
+        // backward shift: the entries after it that would no longer be found move into the hole
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (streamIds[next] == 0) {
+                break;
+            }
+            int home = home(streamIds[next]);
+            boolean reachable = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!reachable) {
+                move(next, hole);
+                hole = next;
+            }
+        }
+        streamIds[hole] = 0;
+        size--;
+    }
+
+    public void headers(int slot, int status, long headersTime) {
+        statuses[slot] = status;
+        headersTimes[slot] = headersTime;
+    }
+
+    public int streamId(int slot) {
+        return streamIds[slot];
+    }
+
+    public long id(int slot) {
+        return ids[slot];
+    }
+
+    public long sendTime(int slot) {
+        return sendTimes[slot];
+    }
+
+    public long intendedTime(int slot) {
+        return intendedTimes[slot];
+    }
+
+    public int endpoint(int slot) {
+        return endpoints[slot];
+    }
+
+    public int status(int slot) {
+        return statuses[slot];
+    }
+
+    public long headersTime(int slot) {
+        return headersTimes[slot];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(streamIds, 0);
+        size = 0;
+    }
+
+    // consecutive streams of a client differ by 2
+    private int home(int streamId) {
+        return (streamId >>> 1) & mask;
+    }
+
+    private void move(int from, int to) {
+        streamIds[to] = streamIds[from];
+        ids[to] = ids[from];
+        sendTimes[to] = sendTimes[from];
+        intendedTimes[to] = intendedTimes[from];
+        endpoints[to] = endpoints[from];
+        statuses[to] = statuses[from];
+        headersTimes[to] = headersTimes[from];
+    }
+
+    private void grow() {
+        int[] oldStreamIds = streamIds;
+        long[] oldIds = ids;
+        long[] oldSendTimes = sendTimes;
+        long[] oldIntendedTimes = intendedTimes;
+        int[] oldEndpoints = endpoints;
+        int[] oldStatuses = statuses;
+        long[] oldHeadersTimes = headersTimes;
+        allocate(oldStreamIds.length << 1);
+        size = 0;
+        for (int i = 0; i < oldStreamIds.length; i++) {
+            if (oldStreamIds[i] != 0) {
+                insert(oldStreamIds[i], oldIds[i], oldSendTimes[i], oldIntendedTimes[i], oldEndpoints[i], oldStatuses[i], oldHeadersTimes[i]);
+            }
+        }
+    }
+}
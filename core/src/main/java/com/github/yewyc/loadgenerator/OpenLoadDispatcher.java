@@ -0,0 +1,223 @@
+package com.github.yewyc.loadgenerator;
+
+import com.github.yewyc.stats.SequentialTimeSeriesRecorder;
+import io.netty.channel.EventLoop;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open Model - wrk3 - owns the arrival schedule of all the connections of an event loop.
+ * <p>
+ * A fixed interval per connection lets a slow connection fall behind while the others are idle, so the aggregate rate
+ * drifts. Here the event loop has a single schedule at its share of the rate, and every intended send goes to the
+ * writable connection with the fewest in-flight requests.
+ * <p>
+ * The intended sends are spaced by the gaps of an {@link ArrivalProcess}, scaled by the interval of the event loop at
+ * the rate of that moment of the phase.
+ * <p>
+ * Not thread safe. Apart from {@link #start(Duration)} it runs on the event loop.
+ */
+public class OpenLoadDispatcher {
+
+    // sends fired by one wake-up at most, so a late event loop still reads the responses in between
+    static final int MAX_BATCH = 128;
+
+    private final EventLoop eventLoop;
+    private final OpenLoadGenerator[] connections;
+    private final SequentialTimeSeriesRecorder recorder;
+    private final RateFunction rate;
+    private final double share;
+    private final double[] unitGaps;
+    private final int maxBatch;
+    private final Runnable dispatchIfRunningTask = this::dispatchIfRunning;
+    // the connections written by the current batch, flushed at its end
+    private final boolean[] written;
+    private final int[] writtenIndexes;
+    private int writtenCount;
+
+    private boolean running;
+    private long start;
+    private long end;
+    private long phaseNs;
+    private long id;
+    private int gapIndex;
+    // double: the interval of an event loop isn't a whole number of nanoseconds, and the error would add up
+    private double intendedOffsetNs;
+    private int nextConnection;
+    private long sent;
+
+    /**
+     * @param rate of the whole benchmark
+     * @param share of the rate for this event loop
+     * @param unitGaps from {@link ArrivalProcess#unitGaps(long)}
+     * @param recorder of the event loop, it counts the intended sends that were never made
+     */
+    public OpenLoadDispatcher(EventLoop eventLoop, List<OpenLoadGenerator> connections, RateFunction rate, double share, double[] unitGaps, SequentialTimeSeriesRecorder recorder) {
+        this(eventLoop, connections, rate, share, unitGaps, recorder, MAX_BATCH);
+    }
+
+    /**
+     * @param maxBatch sends fired by one wake-up at most. 1 is a task and a flush per send, for the benchmark
+     */
+    OpenLoadDispatcher(EventLoop eventLoop, List<OpenLoadGenerator> connections, RateFunction rate, double share, double[] unitGaps, SequentialTimeSeriesRecorder recorder, int maxBatch) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be at least 1, got: " + maxBatch);
+        }
+        this.maxBatch = maxBatch;
+        this.eventLoop = eventLoop;
+        this.connections = connections.toArray(new OpenLoadGenerator[0]);
+        this.written = new boolean[this.connections.length];
+        this.writtenIndexes = new int[this.connections.length];
+        this.recorder = recorder;
+        this.rate = rate;
+        this.share = share;
+        this.unitGaps = unitGaps;
+    }
+
+    /**
+     * Must be called after the connections were started. It starts later than them, so it moves their end of the phase
+     * to its own, otherwise the sends in between would be lost
+     */
+    public void start(Duration duration) {
+        assert !eventLoop.inEventLoop();
+        eventLoop.execute(() -> {
+            this.running = true;
+            this.id = 0;
+            this.gapIndex = 0;
+            this.intendedOffsetNs = 0;
+            this.sent = 0;
+            this.start = System.nanoTime();
+            this.phaseNs = duration.toNanos();
+            this.end = this.start + this.phaseNs;
+            for (OpenLoadGenerator connection : connections) {
+                connection.endAt(this.end);
+            }
+            dispatch();
+        });
+    }
+
+    private void dispatchIfRunning() {
+        assert eventLoop.inEventLoop();
+        if (running) {
+            dispatch();
+        }
+    }
+
+    /*
+     * Fires every send whose intended time has passed, then sleeps until the next one. A wake-up late by a few
+     * intervals doesn't cost one task per send, and the connections are flushed once for all of them.
+     */
+    private void dispatch() {
+        // the phase is [start, end). Compared as an offset, a rate of 0 makes it infinite
+        if (this.intendedOffsetNs >= this.phaseNs) {
+            this.running = false;
+            return;
+        }
+        long intendedTime = start + (long) this.intendedOffsetNs;
+        long now = System.nanoTime();
+        if (now > end) {
+            // behind the schedule at the end of the phase: the rest is dropped, sending it would overlap the next phase
+            long dropped = 0;
+            while (this.intendedOffsetNs < this.phaseNs) {
+                dropped++;
+                nextIntendedTime();
+            }
+            recorder.recordDropped(now, dropped);
+            this.running = false;
+            return;
+        }
+        int fired = 0;
+        while (intendedTime <= now && fired < this.maxBatch) {
+            // the open model doesn't wait for the server: a late send is the lag of the event loop
+            recorder.recordSendLag(now, now - intendedTime);
+            int index = leastLoadedConnection();
+            if (connections[index].executeRequest(now, intendedTime)) {
+                this.sent++;
+            }
+            if (!this.written[index]) {
+                this.written[index] = true;
+                this.writtenIndexes[this.writtenCount++] = index;
+            }
+            nextIntendedTime();
+            fired++;
+            if (this.intendedOffsetNs >= this.phaseNs) {
+                this.running = false;
+                break;
+            }
+            intendedTime = start + (long) this.intendedOffsetNs;
+        }
+        for (int i = 0; i < this.writtenCount; i++) {
+            int index = this.writtenIndexes[i];
+            this.written[index] = false;
+            connections[index].flush();
+        }
+        this.writtenCount = 0;
+        if (!this.running) {
+            return;
+        }
+        long delayNs = intendedTime - now;
+        if (delayNs > 0) {
+            eventLoop.schedule(dispatchIfRunningTask, delayNs, TimeUnit.NANOSECONDS);
+        } else {
+            // still behind after a whole batch: the responses are read before the next one
+            eventLoop.execute(dispatchIfRunningTask);
+        }
+    }
+
+    private void nextIntendedTime() {
+        double intervalNs = TimeUnit.SECONDS.toNanos(1) / (this.rate.rateAt((long) this.intendedOffsetNs, this.phaseNs) * this.share);
+        this.intendedOffsetNs += this.unitGaps[this.gapIndex] * intervalNs;
+        if (++this.gapIndex == this.unitGaps.length) {
+            this.gapIndex = 0;
+        }
+        this.id++;
+    }
+
+    /*
+     * Starts after the last connection used, so the connections share the load when they are all idle. It stops at the
+     * first idle writable connection, which is the common case when the server keeps up.
+     *
+     * @return its index in connections
+     */
+    private int leastLoadedConnection() {
+        int best = -1;
+        int bestInflight = Integer.MAX_VALUE;
+        boolean bestWritable = false;
+        int first = nextConnection;
+        for (int i = 0; i < connections.length; i++) {
+            int index = first + i;
+            if (index >= connections.length) {
+                index -= connections.length;
+            }
+            OpenLoadGenerator connection = connections[index];
+            boolean writable = connection.isWritable();
+            int inflight = connection.inflightRequests();
+            if ((writable && !bestWritable) || (writable == bestWritable && inflight < bestInflight)) {
+                best = index;
+                bestInflight = inflight;
+                bestWritable = writable;
+                nextConnection = index + 1 == connections.length ? 0 : index + 1;
+                if (writable && inflight == 0) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the intended sends of this event loop, from its start until now
+     */
+    public long getIntended() {
+        return this.id;
+    }
+
+    /**
+     * @return the requests written to a connection or queued until it is writable. The dropped ones are not counted
+     */
+    public long getSent() {
+        return this.sent;
+    }
+}
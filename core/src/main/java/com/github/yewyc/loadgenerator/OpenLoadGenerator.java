@@ -3,30 +3,29 @@ package com.github.yewyc.loadgenerator;
 import io.netty.channel.Channel;
 
 import java.net.URL;
-import java.util.concurrent.TimeUnit;
+import java.util.SplittableRandom;
 
 /**
- * Open Model - wrk3 - Fixed rate, fire requests at that rate
+ * Open Model - wrk3 - Fixed rate, fire requests at that rate.
+ * <p>
+ * The connection doesn't have its own schedule: the {@link OpenLoadDispatcher} of its event loop decides when it sends.
  */
 public class OpenLoadGenerator extends AbstractLoadGenerator {
 
-    private final long intervalNs;
-
-    public OpenLoadGenerator(URL urlBase, Channel channel, long intervalNs) {
+    public OpenLoadGenerator(URL urlBase, Channel channel) {
         super(urlBase, channel);
-        this.intervalNs = intervalNs;
     }
 
+    public OpenLoadGenerator(URL urlBase, Channel channel, Protocol protocol) {
+        super(urlBase, channel, 1, protocol);
+    }
+
+    public OpenLoadGenerator(URL urlBase, Channel channel, Protocol protocol, RequestMix mix, SplittableRandom random) {
+        super(urlBase, channel, 1, protocol, mix, random);
+    }
+
+    @Override
     protected void scheduleNextRequest() {
-        long intendedTime = start + (this.id * this.intervalNs);
-        long now = System.nanoTime();
-        long delayNs = intendedTime - now;
-        if (delayNs > 0) {
-            eventLoop.schedule(this::scheduleNextRequestIfRunning, delayNs, TimeUnit.NANOSECONDS);
-        } else {
-            executeRequest(System.nanoTime(), intendedTime);
-            // TODO eventLoop.execute adds a small amount of overhead compared to a direct loop but prevent stack overflows from deep recursion
-            eventLoop.execute(this::scheduleNextRequestIfRunning);
-        }
+        // the dispatcher sends the requests
     }
 }
@@ -0,0 +1,16 @@
+package com.github.yewyc.loadgenerator;
+
+/**
+ * The HTTP version the connections speak
+ */
+public enum Protocol {
+    /**
+     * HTTP/1.1: one response at a time per connection, in the order of the requests
+     */
+    http1,
+    /**
+     * HTTP/2 over cleartext with prior knowledge, or over TLS with ALPN for an https url: the requests of a connection
+     * are concurrent streams, answered in any order
+     */
+    h2c
+}
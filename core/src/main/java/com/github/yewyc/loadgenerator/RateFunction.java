@@ -0,0 +1,117 @@
+package com.github.yewyc.loadgenerator;
+
+import java.time.Duration;
+
+/**
+ * The target rate of a phase over time, in requests per second of the whole benchmark. The schedulers ask it for the
+ * rate at each intended send, so the gap to the next one follows the rate of that moment.
+ */
+@FunctionalInterface
+public interface RateFunction {
+
+    /**
+     * @param elapsedNs time since the start of the phase
+     * @param phaseNs duration of the phase
+     */
+    double rateAt(long elapsedNs, long phaseNs);
+
+    /**
+     * @return the mean rate over the phase
+     */
+    default double averageRate(Duration phase) {
+        long phaseNs = phase.toNanos();
+        int samples = 1_000;
+        double sum = 0;
+        for (int i = 0; i < samples; i++) {
+            sum += rateAt((long) ((i + 0.5) * phaseNs / samples), phaseNs);
+        }
+        return sum / samples;
+    }
+
+    /**
+     * @param rate 0 for the closed model, which doesn't use it
+     */
+    static RateFunction constant(double rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("rate must not be negative, got: " + rate);
+        }
+        return (elapsedNs, phaseNs) -> rate;
+    }
+
+    /**
+     * From one rate to the other, linearly over the phase
+     */
+    static RateFunction ramp(double from, double to) {
+        positive(from);
+        positive(to);
+        return (elapsedNs, phaseNs) -> from + (to - from) * elapsedNs / phaseNs;
+    }
+
+    /**
+     * From one rate to the other in stairs of the same duration. The first stair is at from and the last one at to.
+     */
+    static RateFunction steps(double from, double to, int steps) {
+        positive(from);
+        positive(to);
+        if (steps < 2) {
+            throw new IllegalArgumentException("steps must be at least 2, got: " + steps);
+        }
+        return (elapsedNs, phaseNs) -> {
+            int step = (int) Math.min(steps - 1, elapsedNs * steps / phaseNs);
+            return from + (to - from) * step / (steps - 1);
+        };
+    }
+
+    /**
+     * The base rate, except for a window at the peak rate
+     */
+    static RateFunction spike(double base, double peak, Duration at, Duration length) {
+        positive(base);
+        positive(peak);
+        long spikeStart = at.toNanos();
+        long spikeEnd = spikeStart + length.toNanos();
+        return (elapsedNs, phaseNs) -> elapsedNs >= spikeStart && elapsedNs < spikeEnd ? peak : base;
+    }
+
+    /**
+     * @param value {@code 1000} constant, {@code 100..1000} ramp, {@code 100..1000/5} five steps, or
+     *              {@code 1000^5000@10s+5s} a spike to 5000 at 10s for 5s
+     */
+    static RateFunction parse(String value) {
+        int spike = value.indexOf('^');
+        if (spike >= 0) {
+            int at = value.indexOf('@', spike);
+            int length = value.indexOf('+', at);
+            if (at < 0 || length < 0) {
+                throw new IllegalArgumentException("Invalid spike, expected <base>^<peak>@<at>+<length>: " + value);
+            }
+            return spike(Double.parseDouble(value.substring(0, spike)),
+                    Double.parseDouble(value.substring(spike + 1, at)),
+                    parseSeconds(value.substring(at + 1, length)),
+                    parseSeconds(value.substring(length + 1)));
+        }
+        int range = value.indexOf("..");
+        if (range >= 0) {
+            double from = Double.parseDouble(value.substring(0, range));
+            int steps = value.indexOf('/', range);
+            if (steps >= 0) {
+                return steps(from, Double.parseDouble(value.substring(range + 2, steps)), Integer.parseInt(value.substring(steps + 1)));
+            }
+            return ramp(from, Double.parseDouble(value.substring(range + 2)));
+        }
+        return constant(Double.parseDouble(value));
+    }
+
+    /**
+     * @param value seconds, with an optional s suffix
+     */
+    static Duration parseSeconds(String value) {
+        return Duration.ofSeconds(Long.parseLong(value.replace("s", "")));
+    }
+
+    private static void positive(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be greater than 0, got: " + rate);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.github.yewyc.loadgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * The requests of a run, each one picked at random by its weight. The requests are encoded once per connection and the
+ * pick is an alias table lookup (Vose), so choosing and writing a request doesn't allocate.
+ */
+public class RequestMix {
+
+    private final List<Endpoint> endpoints;
+    // alias method: the column i is i with the probability, its alias otherwise
+    private final double[] probabilities;
+    private final int[] aliases;
+    // null without one
+    private final BodyCorpus corpus;
+    private final boolean[] corpusBodies;
+
+    public RequestMix(List<Endpoint> endpoints) {
+        this(endpoints, null);
+    }
+
+    /**
+     * @param corpus the bodies of the POST, PUT and PATCH endpoints that don't have their own, can be null
+     */
+    public RequestMix(List<Endpoint> endpoints, BodyCorpus corpus) {
+        if (endpoints == null || endpoints.isEmpty()) {
+            throw new IllegalArgumentException("endpoints must not be null or empty");
+        }
+        this.endpoints = List.copyOf(endpoints);
+        this.corpus = corpus;
+        this.corpusBodies = new boolean[endpoints.size()];
+        for (int i = 0; i < corpusBodies.length; i++) {
+            Endpoint endpoint = endpoints.get(i);
+            corpusBodies[i] = corpus != null && endpoint.body().length == 0 && endpoint.method().matches("POST|PUT|PATCH");
+        }
+        int n = endpoints.size();
+        this.probabilities = new double[n];
+        this.aliases = new int[n];
+        long totalWeight = endpoints.stream().mapToLong(Endpoint::weight).sum();
+        double[] scaled = new double[n];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            scaled[i] = (double) endpoints.get(i).weight() * n / totalWeight;
+            (scaled[i] < 1 ? small : large).add(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.poll();
+            int more = large.poll();
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            (scaled[more] < 1 ? small : large).add(more);
+        }
+        // what is left is 1 but for the rounding
+        for (int i : large) {
+            probabilities[i] = 1;
+        }
+        for (int i : small) {
+            probabilities[i] = 1;
+        }
+    }
+
+    /**
+     * Every request is a GET of the path, like without a mix
+     */
+    public static RequestMix get(String path) {
+        return new RequestMix(List.of(Endpoint.get(path.isEmpty() ? "/" : path)));
+    }
+
+    /**
+     * Every request is a POST of the path, for a body corpus without a mix
+     */
+    public static RequestMix post(String path) {
+        return new RequestMix(List.of(new Endpoint("POST", path.isEmpty() ? "/" : path, Map.of(), new byte[0], 1)));
+    }
+
+    /**
+     * @return the same endpoints with the bodies of the corpus
+     */
+    public RequestMix withCorpus(BodyCorpus corpus) {
+        return new RequestMix(endpoints, corpus);
+    }
+
+    /**
+     * One endpoint per line, with the options of curl; lines starting with # are ignored:
+     * <pre>
+     * 60 GET /hello
+     * 30 POST /orders -H "Content-Type: application/json" -d @order.json
+     * 10 PUT /orders/1 -d "{\"state\": \"paid\"}"
+     * </pre>
+     * A body starting with @ is read from the file, relative to the mix.
+     */
+    public static RequestMix parse(File file) throws IOException {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            List<String> tokens = tokenize(line);
+            if (tokens.size() < 3) {
+                throw new IllegalArgumentException("Invalid endpoint, expected <weight> <method> <path>: " + line);
+            }
+            Map<String, String> headers = new LinkedHashMap<>();
+            byte[] body = new byte[0];
+            for (int i = 3; i < tokens.size(); i += 2) {
+                if (i + 1 == tokens.size()) {
+                    throw new IllegalArgumentException("Missing the value of " + tokens.get(i) + ": " + line);
+                }
+                String value = tokens.get(i + 1);
+                switch (tokens.get(i)) {
+                    case "-H" -> {
+                        int colon = value.indexOf(':');
+                        if (colon <= 0) {
+                            throw new IllegalArgumentException("Invalid header, expected <name>: <value>: " + value);
+                        }
+                        headers.put(value.substring(0, colon).trim(), value.substring(colon + 1).trim());
+                    }
+                    case "-d" -> body = value.startsWith("@")
+                            ? Files.readAllBytes(file.toPath().resolveSibling(value.substring(1)))
+                            : value.getBytes(StandardCharsets.UTF_8);
+                    default -> throw new IllegalArgumentException("Unknown option " + tokens.get(i) + ": " + line);
+                }
+            }
+            endpoints.add(new Endpoint(tokens.get(1), tokens.get(2), headers, body, Integer.parseInt(tokens.get(0))));
+        }
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("No endpoints in " + file);
+        }
+        return new RequestMix(endpoints);
+    }
+
+    // split on the spaces out of double quotes, \" is a quote
+    private static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        boolean inToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                token.append('"');
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+                inToken = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote: " + line);
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * @return the index of an endpoint, drawn by weight
+     */
+    public int pick(SplittableRandom random) {
+        if (probabilities.length == 1) {
+            return 0;
+        }
+        int column = random.nextInt(probabilities.length);
+        return random.nextDouble() < probabilities[column] ? column : aliases[column];
+    }
+
+    /**
+     * @return true if the requests of the endpoint take their body from the corpus
+     */
+    public boolean hasCorpusBody(int endpoint) {
+        return corpusBodies[endpoint];
+    }
+
+    public BodyCorpus corpus() {
+        return corpus;
+    }
+
+    public Endpoint endpoint(int index) {
+        return endpoints.get(index);
+    }
+
+    public List<Endpoint> endpoints() {
+        return endpoints;
+    }
+
+    public int size() {
+        return endpoints.size();
+    }
+
+    public List<String> names() {
+        return endpoints.stream().map(Endpoint::name).toList();
+    }
+}
@@ -1,39 +1,91 @@
 package com.github.yewyc.loadgenerator;
 
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.FullHttpResponse;
 
 import java.net.URL;
+import java.util.SplittableRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Closed Model - wrk2 - Response-driven with intended time
+ * Closed Model - wrk2 - Response-driven with intended time. With pipelining, up to that many requests can wait for a
+ * response; the due ones are written together and flushed once.
  */
 public class SemiOpenLoadGenerator extends AbstractLoadGenerator {
 
-    private final long intervalNs;
+    private RateFunction rate;
+    private double share;
+    // double: the interval isn't a whole number of nanoseconds, and the error would add up
+    private double intendedOffsetNs;
+    // at most one wake-up for the next intended time, however many responses arrive before it
+    private boolean timerScheduled;
+    // the intended time the timer wakes up for
+    private long timerIntendedTime;
+    private final Runnable timerTask = () -> {
+        this.timerScheduled = false;
+        // the sends after a response are late because of the server, the timer only because of the event loop
+        recordSendLag(System.nanoTime(), this.timerIntendedTime);
+        scheduleNextRequestIfRunning();
+    };
 
-    public SemiOpenLoadGenerator(URL urlBase, Channel channel, long intervalNs) {
+    public SemiOpenLoadGenerator(URL urlBase, Channel channel) {
         super(urlBase, channel);
-        this.intervalNs = intervalNs;
+    }
+
+    public SemiOpenLoadGenerator(URL urlBase, Channel channel, int pipeline, Protocol protocol) {
+        super(urlBase, channel, pipeline, protocol);
+    }
+
+    public SemiOpenLoadGenerator(URL urlBase, Channel channel, int pipeline, Protocol protocol, RequestMix mix, SplittableRandom random) {
+        super(urlBase, channel, pipeline, protocol, mix, random);
+    }
+
+    /**
+     * Must be called before {@link #start()}, for every phase
+     *
+     * @param rate of the whole benchmark
+     * @param connections that share the rate
+     */
+    public void schedule(RateFunction rate, int connections) {
+        assert !eventLoop.inEventLoop();
+        this.rate = rate;
+        this.share = 1.0 / connections;
+        this.intendedOffsetNs = 0;
+        this.timerScheduled = false;
     }
 
     @Override
     protected void scheduleNextRequest() {
-        long intendedTime = start + (this.id * this.intervalNs);
-        long now = System.nanoTime();
-        long delayNs = intendedTime - now;
-        if (delayNs > 0) {
-            eventLoop.schedule(this::scheduleNextRequestIfRunning, delayNs, TimeUnit.NANOSECONDS);
-        } else {
-            executeRequest(System.nanoTime(), intendedTime);
+        long phaseNs = getEnd() - start;
+        boolean written = false;
+        // a rate of 0 makes it infinite
+        while (inflightRequests() < pipeline && this.intendedOffsetNs < phaseNs) {
+            long intendedTime = start + (long) this.intendedOffsetNs;
+            long now = System.nanoTime();
+            long delayNs = intendedTime - now;
+            if (delayNs > 0) {
+                if (!this.timerScheduled) {
+                    this.timerScheduled = true;
+                    this.timerIntendedTime = intendedTime;
+                    eventLoop.schedule(timerTask, delayNs, TimeUnit.NANOSECONDS);
+                }
+                break;
+            }
+            boolean sent = executeRequest(now, intendedTime);
+            double intervalNs = TimeUnit.SECONDS.toNanos(1) / (this.rate.rateAt((long) this.intendedOffsetNs, phaseNs) * this.share);
+            this.intendedOffsetNs += intervalNs;
+            if (!sent) {
+                // past the end or not connected: no response will call it again
+                break;
+            }
+            written = true;
+        }
+        if (written) {
+            flush();
         }
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) throws Exception {
-        super.channelRead0(ctx, msg);
-        eventLoop.execute(this::scheduleNextRequestIfRunning);
+    protected void onResponse() {
+        eventLoop.execute(scheduleNextRequestIfRunningTask);
     }
 }
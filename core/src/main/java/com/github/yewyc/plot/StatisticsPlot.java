@@ -34,6 +34,8 @@ public class StatisticsPlot {
 
             double[] xValues = new double[statisticTicks.size()];
             double[] latencyValues = new double[statisticTicks.size()];
+            double[] serviceTimeValues = new double[statisticTicks.size()];
+            double[] firstByteValues = new double[statisticTicks.size()];
             double[] throughputValues = new double[statisticTicks.size()];
 
             for (int j = 0; j < statisticTicks.size(); j++) {
@@ -42,6 +44,8 @@ public class StatisticsPlot {
 
                 xValues[j] = globalXIndex;
                 latencyValues[j] = statisticTick.latency().getMean() / scale;
+                serviceTimeValues[j] = statisticTick.serviceTime().getMean() / scale;
+                firstByteValues[j] = statisticTick.firstByte().getMean() / scale;
                 throughputValues[j] = statisticTick.counter();
                 globalXIndex++;
             }
@@ -51,6 +55,16 @@ public class StatisticsPlot {
                     .name(statisticPhase.getName() + " (Lat)")
                     .build());
 
+            allTraces.add(ScatterTrace.builder(xValues, serviceTimeValues)
+                    .mode(ScatterTrace.Mode.LINE)
+                    .name(statisticPhase.getName() + " (Svc)")
+                    .build());
+
+            allTraces.add(ScatterTrace.builder(xValues, firstByteValues)
+                    .mode(ScatterTrace.Mode.LINE)
+                    .name(statisticPhase.getName() + " (TTFB)")
+                    .build());
+
             allTraces.add(ScatterTrace.builder(xValues, throughputValues)
                     .mode(ScatterTrace.Mode.LINE)
                     .xAxis("x2")
@@ -0,0 +1,50 @@
+package com.github.yewyc.stats;
+
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.HistogramIterationValue;
+
+public class Percentiles {
+
+    /**
+     * The spectrum printed by wrk2 --latency
+     */
+    public static final double[] SPECTRUM = {50, 75, 90, 99, 99.9, 99.99, 99.999, 99.9999, 100};
+
+    /**
+     * Same as calling {@link AbstractHistogram#getValueAtPercentile(double)} for each percentile, but it walks the
+     * histogram only once.
+     *
+     * @param percentiles in ascending order
+     */
+    public static long[] valuesAtPercentiles(AbstractHistogram histogram, double... percentiles) {
+        long[] values = new long[percentiles.length];
+        long totalCount = histogram.getTotalCount();
+        if (totalCount == 0) {
+            return values;
+        }
+        int next = 0;
+        long countToNext = countAtPercentile(percentiles[next], totalCount);
+        long totalToCurrent = 0;
+        for (HistogramIterationValue value : histogram.recordedValues()) {
+            totalToCurrent += value.getCountAtValueIteratedTo();
+            while (totalToCurrent >= countToNext) {
+                values[next] = histogram.highestEquivalentValue(value.getValueIteratedTo());
+                if (++next == percentiles.length) {
+                    return values;
+                }
+                countToNext = countAtPercentile(percentiles[next], totalCount);
+            }
+        }
+        // rounding errors at 100%
+        for (; next < percentiles.length; next++) {
+            values[next] = histogram.getMaxValue();
+        }
+        return values;
+    }
+
+    private static long countAtPercentile(double percentile, long totalCount) {
+        // same rounding as AbstractHistogram.getValueAtPercentile
+        long count = (long) Math.ceil((Math.min(percentile, 100.0) / 100.0) * totalCount);
+        return Math.max(count, 1);
+    }
+}
@@ -4,21 +4,50 @@ import org.HdrHistogram.Histogram;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static com.github.yewyc.stats.Statistic.highestTrackableValue;
 import static com.github.yewyc.stats.Statistic.numberOfSignificantValueDigits;
 import static com.github.yewyc.stats.Statistic.oneSecInNanos;
 
+/**
+ * Latency per second of the phase.
+ * <p>
+ * One instance is shared by all the connections of an event loop: they run on the same thread, so no synchronization
+ * is needed and the memory grows with threads x seconds instead of connections x seconds.
+ * <p>
+ * It also keeps an interval histogram for the live progress. Like the HdrHistogram Recorder, there are two of them and
+ * {@link #swapInterval()} exchanges the active and the inactive one. The swap runs as a task on the event loop, so
+ * {@link #recordValue} is not synchronized.
+ */
 public class SequentialTimeSeriesRecorder {
 
     private static class Bucket {
         int errors;
+        // sent late because the channel was not writable
+        int delayed;
+        // never sent
+        int dropped;
+        long bytes;
+        // now - intended time. It includes the time the request waited to be sent (coordinated omission)
         final Histogram histogram;
+        // now - when fired. It is only the time the server took to answer, up to the last byte
+        final Histogram serviceTimeHistogram;
+        // headers received - when fired. The rest of the service time is the transfer of the body
+        final Histogram firstByteHistogram;
+        // when fired - intended time, of the sends the load generator made late on its own
+        final Histogram sendLagHistogram;
+        // stalls of the event loop, whatever it was doing
+        final Histogram hiccupHistogram;
 
         public Bucket() {
-            this.histogram = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
-            this.histogram.setAutoResize(true);
+            this.histogram = newHistogram();
+            this.serviceTimeHistogram = newHistogram();
+            this.firstByteHistogram = newHistogram();
+            // they grow with the values they record: the lag is rarely recorded, the hiccups are short
+            this.sendLagHistogram = new Histogram(numberOfSignificantValueDigits);
+            this.hiccupHistogram = new Histogram(numberOfSignificantValueDigits);
         }
     }
 
@@ -27,6 +56,21 @@ public class SequentialTimeSeriesRecorder {
     private int cachedIndex = 0;
     private long nextSecondBarrier; // The nano timestamp when the current index expires
 
+    private Histogram activeInterval = newHistogram();
+    private Histogram inactiveInterval = newHistogram();
+    private Histogram activeServiceTimeInterval = newHistogram();
+    private Histogram inactiveServiceTimeInterval = newHistogram();
+    private Histogram activeFirstByteInterval = newHistogram();
+    private Histogram inactiveFirstByteInterval = newHistogram();
+    private long activeIntervalErrors;
+    private long activeIntervalDelayed;
+    private long activeIntervalDropped;
+    private long activeIntervalBytes;
+
+    // by endpoint of the request mix, over the whole phase. Only recorded with more than one endpoint
+    private Histogram[] endpointHistograms = new Histogram[0];
+    private long[] endpointErrors = new long[0];
+
     /**
      * @param testDuration The expected duration of the test. The buffer will be fixed to this size. It is a slow operation.
      * you must call start. Be aware of it.
@@ -38,44 +82,230 @@ public class SequentialTimeSeriesRecorder {
         }
     }
 
+    private static Histogram newHistogram() {
+        Histogram histogram = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+        histogram.setAutoResize(true);
+        return histogram;
+    }
+
+    /**
+     * Clears what a previous phase recorded, so the same recorder, and its histograms, can be used by the next phase
+     * of the same duration.
+     */
     public void start(long startNanoTime) {
+        for (Bucket bucket : buffer) {
+            bucket.errors = 0;
+            bucket.delayed = 0;
+            bucket.dropped = 0;
+            bucket.bytes = 0;
+            bucket.histogram.reset();
+            bucket.serviceTimeHistogram.reset();
+            bucket.firstByteHistogram.reset();
+            bucket.sendLagHistogram.reset();
+            bucket.hiccupHistogram.reset();
+        }
         this.startNanoTime = startNanoTime;
+        this.cachedIndex = 0;
         this.nextSecondBarrier = startNanoTime + oneSecInNanos;
+        this.activeInterval.reset();
+        this.activeInterval.setStartTimeStamp(System.currentTimeMillis());
+        this.activeServiceTimeInterval.reset();
+        this.activeServiceTimeInterval.setStartTimeStamp(this.activeInterval.getStartTimeStamp());
+        this.activeFirstByteInterval.reset();
+        this.activeFirstByteInterval.setStartTimeStamp(this.activeInterval.getStartTimeStamp());
+        this.activeIntervalErrors = 0;
+        this.activeIntervalDelayed = 0;
+        this.activeIntervalDropped = 0;
+        this.activeIntervalBytes = 0;
+        for (Histogram histogram : endpointHistograms) {
+            histogram.reset();
+        }
+        Arrays.fill(endpointErrors, 0);
     }
 
-    public void recordValue(long currentNanoTime, long duration, boolean success) {
+    /**
+     * @param currentNanoTime the time used to find the second bucket
+     * @param responseTime the time since the request was intended to be sent
+     * @param serviceTime the time since the request was actually sent
+     * @param firstByteTime the time from the actual send to the response headers
+     */
+    public void recordValue(long currentNanoTime, long responseTime, long serviceTime, long firstByteTime, boolean success) {
+        Bucket bucket = bucket(currentNanoTime);
+        if (!success) {
+            bucket.errors++;
+            activeIntervalErrors++;
+        }
+        bucket.histogram.recordValue(responseTime);
+        bucket.serviceTimeHistogram.recordValue(serviceTime);
+        bucket.firstByteHistogram.recordValue(firstByteTime);
+        activeInterval.recordValue(responseTime);
+        activeServiceTimeInterval.recordValue(serviceTime);
+        activeFirstByteInterval.recordValue(firstByteTime);
+    }
+
+    /**
+     * A send made after its intended time because the event loop was late, not because the model waited for a
+     * response or for the channel
+     *
+     * @param lag when fired - intended time
+     */
+    public void recordSendLag(long currentNanoTime, long lag) {
+        bucket(currentNanoTime).sendLagHistogram.recordValue(Math.max(0, lag));
+    }
+
+    /**
+     * A wake-up of the hiccup probe, like jHiccup: the long stalls are back-filled with the wake-ups they missed
+     *
+     * @param hiccup how late the probe woke up
+     * @param expectedInterval between two wake-ups
+     */
+    public void recordHiccup(long currentNanoTime, long hiccup, long expectedInterval) {
+        bucket(currentNanoTime).hiccupHistogram.recordValueWithExpectedInterval(Math.max(0, hiccup), expectedInterval);
+    }
+
+    /**
+     * The response of an endpoint of the request mix, on top of {@link #recordValue}
+     *
+     * @param endpoint index in the mix
+     */
+    public void recordEndpoint(int endpoint, long responseTime, boolean success) {
+        ensureEndpoint(endpoint);
+        endpointHistograms[endpoint].recordValue(responseTime);
+        if (!success) {
+            endpointErrors[endpoint]++;
+        }
+    }
+
+    /**
+     * A request of an endpoint that will never have a response, on top of {@link #recordError}
+     */
+    public void recordEndpointError(int endpoint) {
+        ensureEndpoint(endpoint);
+        endpointErrors[endpoint]++;
+    }
+
+    private void ensureEndpoint(int endpoint) {
+        if (endpoint >= endpointHistograms.length) {
+            int length = endpointHistograms.length;
+            endpointHistograms = Arrays.copyOf(endpointHistograms, endpoint + 1);
+            for (int i = length; i < endpointHistograms.length; i++) {
+                endpointHistograms[i] = newHistogram();
+            }
+            endpointErrors = Arrays.copyOf(endpointErrors, endpoint + 1);
+        }
+    }
+
+    /**
+     * A request that will never have a response, e.g. the connection was closed
+     */
+    public void recordError(long currentNanoTime) {
+        bucket(currentNanoTime).errors++;
+        activeIntervalErrors++;
+    }
+
+    /**
+     * A request sent later than intended because the channel was not writable
+     */
+    public void recordDelayed(long currentNanoTime) {
+        bucket(currentNanoTime).delayed++;
+        activeIntervalDelayed++;
+    }
+
+    /**
+     * A request that was intended but never sent
+     */
+    public void recordDropped(long currentNanoTime) {
+        recordDropped(currentNanoTime, 1);
+    }
+
+    public void recordDropped(long currentNanoTime, long count) {
+        bucket(currentNanoTime).dropped += Math.toIntExact(count);
+        activeIntervalDropped += count;
+    }
+
+    /**
+     * @param currentNanoTime the time used to find the second bucket, the same as the response
+     * @param bytes read for the response, headers included
+     */
+    public void recordBytes(long currentNanoTime, long bytes) {
+        bucket(currentNanoTime).bytes += bytes;
+        activeIntervalBytes += bytes;
+    }
+
+    private Bucket bucket(long currentNanoTime) {
         int index;
 
-        // FAST PATH: Most calls hit this.
-        // We only check if "currentNanoTime" has passed the barrier.
-        // This is a single CPU instruction (comparison).
-        if (currentNanoTime < nextSecondBarrier) {
+        // FAST PATH: Most calls hit this, the time is in the cached second.
+        // Both bounds are checked: the connections of the event loop share the recorder, and their responses are
+        // recorded with send times that are not in order.
+        if (currentNanoTime < nextSecondBarrier && currentNanoTime >= nextSecondBarrier - oneSecInNanos) {
             index = cachedIndex;
         }
-        // SLOW PATH: We crossed the second boundary (happens only once per second)
+        // SLOW PATH: another second than the previous call (happens about once per second)
         else {
             long elapsedNanos = currentNanoTime - startNanoTime;
 
             // Perform the expensive division only when necessary
-            index = (int) (elapsedNanos / oneSecInNanos);
+            long second = Math.floorDiv(elapsedNanos, oneSecInNanos);
+
+            // Calculate the next barrier.
+            // We use (second + 1) to find the start of the NEXT second.
+            this.nextSecondBarrier = startNanoTime + ((second + 1) * oneSecInNanos);
+
+            // the connections of the event loop start a bit after the recorder. it is fine add as the last one
+            // a send of the previous phase goes in the first one
+            index = (int) Math.max(0, Math.min(second, buffer.length - 1));
 
             // Update the cache
             cachedIndex = index;
+        }
+        return buffer[index];
+    }
 
-            // Calculate the next barrier.
-            // We use (index + 1) to find the start of the NEXT second.
-            this.nextSecondBarrier = startNanoTime + ((index + 1) * oneSecInNanos);
+    /**
+     * Must run on the event loop. The returned histogram is valid until the next call: the caller must be done with
+     * it before it submits the next swap.
+     *
+     * @return the response, service and first byte times recorded since the previous swap
+     */
+    public StatisticInterval swapInterval() {
+        long now = System.currentTimeMillis();
+        Histogram completed = activeInterval;
+        completed.setEndTimeStamp(now);
+        Histogram completedServiceTime = activeServiceTimeInterval;
+        completedServiceTime.setEndTimeStamp(now);
+        Histogram completedFirstByte = activeFirstByteInterval;
+        completedFirstByte.setEndTimeStamp(now);
+        StatisticInterval interval = new StatisticInterval(completed, completedServiceTime, completedFirstByte, activeIntervalErrors, activeIntervalDelayed, activeIntervalDropped, activeIntervalBytes);
 
-            // can have +1 nanosecond diff. the bucked is from when it started. it is fine add as the last one
-            if (index >= buffer.length) {
-                index = buffer.length - 1;
-            }
-        }
-        Bucket bucket = buffer[index];
-        if (!success) {
-            bucket.errors++;
-        }
-        bucket.histogram.recordValue(duration);
+        activeInterval = inactiveInterval;
+        activeInterval.reset();
+        activeInterval.setStartTimeStamp(now);
+        inactiveInterval = completed;
+
+        activeServiceTimeInterval = inactiveServiceTimeInterval;
+        activeServiceTimeInterval.reset();
+        activeServiceTimeInterval.setStartTimeStamp(now);
+        inactiveServiceTimeInterval = completedServiceTime;
+
+        activeFirstByteInterval = inactiveFirstByteInterval;
+        activeFirstByteInterval.reset();
+        activeFirstByteInterval.setStartTimeStamp(now);
+        inactiveFirstByteInterval = completedFirstByte;
+
+        activeIntervalErrors = 0;
+        activeIntervalDelayed = 0;
+        activeIntervalDropped = 0;
+        activeIntervalBytes = 0;
+
+        return interval;
+    }
+
+    /**
+     * @return the duration it records, in seconds
+     */
+    public int seconds() {
+        return buffer.length;
     }
 
     public List<Histogram> getHistograms() {
@@ -86,6 +316,38 @@ public class SequentialTimeSeriesRecorder {
         return histograms;
     }
 
+    public List<Histogram> getServiceTimeHistograms() {
+        List<Histogram> histograms = new ArrayList<>();
+        for (Bucket b : buffer) {
+            histograms.add(b.serviceTimeHistogram);
+        }
+        return histograms;
+    }
+
+    public List<Histogram> getFirstByteHistograms() {
+        List<Histogram> histograms = new ArrayList<>();
+        for (Bucket b : buffer) {
+            histograms.add(b.firstByteHistogram);
+        }
+        return histograms;
+    }
+
+    public List<Histogram> getSendLagHistograms() {
+        List<Histogram> histograms = new ArrayList<>();
+        for (Bucket b : buffer) {
+            histograms.add(b.sendLagHistogram);
+        }
+        return histograms;
+    }
+
+    public List<Histogram> getHiccupHistograms() {
+        List<Histogram> histograms = new ArrayList<>();
+        for (Bucket b : buffer) {
+            histograms.add(b.hiccupHistogram);
+        }
+        return histograms;
+    }
+
     public List<Integer> getErrors() {
         List<Integer> errors = new ArrayList<>();
         for (Bucket b : buffer) {
@@ -93,4 +355,47 @@ public class SequentialTimeSeriesRecorder {
         }
         return errors;
     }
+
+    public List<Integer> getDelayed() {
+        List<Integer> delayed = new ArrayList<>();
+        for (Bucket b : buffer) {
+            delayed.add(b.delayed);
+        }
+        return delayed;
+    }
+
+    public List<Integer> getDropped() {
+        List<Integer> dropped = new ArrayList<>();
+        for (Bucket b : buffer) {
+            dropped.add(b.dropped);
+        }
+        return dropped;
+    }
+
+    public List<Long> getBytes() {
+        List<Long> bytes = new ArrayList<>();
+        for (Bucket b : buffer) {
+            bytes.add(b.bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the response times by endpoint of the request mix, empty with a single endpoint
+     */
+    public List<Histogram> getEndpointHistograms() {
+        return List.of(endpointHistograms);
+    }
+
+    public List<Long> getEndpointErrors() {
+        List<Long> errors = new ArrayList<>();
+        for (long e : endpointErrors) {
+            errors.add(e);
+        }
+        return errors;
+    }
+
+    public Statistic collectStatistics() {
+        return new Statistic(getHistograms(), getServiceTimeHistograms(), getFirstByteHistograms(), getErrors(), getDelayed(), getDropped(), getBytes(), getSendLagHistograms(), getHiccupHistograms(), getEndpointHistograms(), getEndpointErrors());
+    }
 }
@@ -6,7 +6,7 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Per connection
+ * Per event loop
  */
 public class Statistic {
 
@@ -16,14 +16,107 @@ public class Statistic {
     public static final long oneSecInNanos = TimeUnit.SECONDS.toNanos(1);
 
     private final List<Histogram> histograms;
+    private final List<Histogram> serviceTimeHistograms;
+    private final List<Histogram> firstByteHistograms;
     private final List<Integer> errors;
+    private final List<Integer> delayed;
+    private final List<Integer> dropped;
+    private final List<Long> bytes;
+    private final List<Histogram> sendLagHistograms;
+    private final List<Histogram> hiccupHistograms;
+    private final List<Histogram> endpointHistograms;
+    private final List<Long> endpointErrors;
 
-    public Statistic(List<Histogram> histograms, List<Integer> errors) {
+    public Statistic(List<Histogram> histograms, List<Histogram> serviceTimeHistograms, List<Histogram> firstByteHistograms, List<Integer> errors, List<Integer> delayed, List<Integer> dropped, List<Long> bytes) {
+        this(histograms, serviceTimeHistograms, firstByteHistograms, errors, delayed, dropped, bytes, List.of(), List.of(), List.of(), List.of());
+    }
+
+    public Statistic(List<Histogram> histograms, List<Histogram> serviceTimeHistograms, List<Histogram> firstByteHistograms, List<Integer> errors, List<Integer> delayed, List<Integer> dropped, List<Long> bytes, List<Histogram> sendLagHistograms, List<Histogram> hiccupHistograms, List<Histogram> endpointHistograms, List<Long> endpointErrors) {
         this.histograms = histograms;
+        this.serviceTimeHistograms = serviceTimeHistograms;
+        this.firstByteHistograms = firstByteHistograms;
         this.errors = errors;
+        this.delayed = delayed;
+        this.dropped = dropped;
+        this.bytes = bytes;
+        this.sendLagHistograms = sendLagHistograms;
+        this.hiccupHistograms = hiccupHistograms;
+        this.endpointHistograms = endpointHistograms;
+        this.endpointErrors = endpointErrors;
     }
 
+    /**
+     * Response time per second, measured from the intended send time
+     */
     public List<Histogram> getHistograms() {
         return histograms;
     }
+
+    /**
+     * Service time per second, measured from the actual send time
+     */
+    public List<Histogram> getServiceTimeHistograms() {
+        return serviceTimeHistograms;
+    }
+
+    /**
+     * Time to the response headers per second, measured from the actual send time
+     */
+    public List<Histogram> getFirstByteHistograms() {
+        return firstByteHistograms;
+    }
+
+    /**
+     * Unsuccessful responses per second
+     */
+    public List<Integer> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Requests sent late per second, because the channel was not writable
+     */
+    public List<Integer> getDelayed() {
+        return delayed;
+    }
+
+    /**
+     * Requests never sent per second
+     */
+    public List<Integer> getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Bytes read per second, headers included
+     */
+    public List<Long> getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Per second, empty when not recorded
+     */
+    public List<Histogram> getSendLagHistograms() {
+        return sendLagHistograms;
+    }
+
+    public List<Histogram> getHiccupHistograms() {
+        return hiccupHistograms;
+    }
+
+    /**
+     * Response time of the phase by endpoint of the request mix. Empty with a single endpoint, and shorter than the
+     * mix when the last endpoints had no response on this event loop.
+     */
+    public List<Histogram> getEndpointHistograms() {
+        return endpointHistograms;
+    }
+
+    /**
+     * Errors of the phase by endpoint of the request mix
+     */
+    public List<Long> getEndpointErrors() {
+        return endpointErrors;
+    }
 }
@@ -2,33 +2,123 @@ package com.github.yewyc.stats;
 
 import org.HdrHistogram.Histogram;
 
+import java.io.Serial;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static com.github.yewyc.stats.Statistic.highestTrackableValue;
 import static com.github.yewyc.stats.Statistic.numberOfSignificantValueDigits;
 
+/**
+ * Merges the statistics of the event loops, second by second
+ */
 public class StatisticConverter {
 
+    // seconds merged by a task before it stops splitting
+    private static final int SECONDS_PER_TASK = 4;
+
+    /**
+     * The seconds are merged in parallel, on the common fork/join pool: each of them is independent, and a long run
+     * with many event loops has thousands of histograms to add.
+     *
+     * @return one tick per second, in order
+     */
     public static List<StatisticTick> convert(List<Statistic> stats) {
-        List<StatisticTick> result = new ArrayList<>();
-        int maxTotal = Integer.MIN_VALUE;
+        int maxTotal = 0;
         for (Statistic info : stats) {
             maxTotal = Math.max(maxTotal, info.getHistograms().size());
         }
-        for (int i = 0; i < maxTotal; i++) {
+        StatisticTick[] ticks = new StatisticTick[maxTotal];
+        ForkJoinPool.commonPool().invoke(new MergeTask(stats, ticks, 0, maxTotal));
+        return Arrays.asList(ticks);
+    }
+
+    private static class MergeTask extends RecursiveAction {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        // never serialized: it is Serializable only because ForkJoinTask is
+        private final transient List<Statistic> stats;
+        private final transient StatisticTick[] ticks;
+        private final int from;
+        private final int to;
+
+        MergeTask(List<Statistic> stats, StatisticTick[] ticks, int from, int to) {
+            this.stats = stats;
+            this.ticks = ticks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SECONDS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    ticks[i] = merge(stats, i);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MergeTask(stats, ticks, from, middle), new MergeTask(stats, ticks, middle, to));
+            }
+        }
+    }
+
+    /*
+     * Only reads the statistics, so the seconds can be merged concurrently
+     */
+    private static StatisticTick merge(List<Statistic> stats, int i) {
+        Histogram latency = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+        Histogram serviceTime = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+        Histogram firstByte = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+        // it grows with the lag, which is rarely recorded
+        Histogram sendLag = new Histogram(numberOfSignificantValueDigits);
+        Histogram hiccups = new Histogram(numberOfSignificantValueDigits);
+        long counter = 0;
+        long errors = 0;
+        long delayed = 0;
+        long dropped = 0;
+        long bytes = 0;
+        for (Statistic info : stats) {
+            if (i < info.getHistograms().size()) {
+                Histogram h = info.getHistograms().get(i);
+                if (h.getTotalCount() > 0) {
+                    latency.add(h);
+                    serviceTime.add(info.getServiceTimeHistograms().get(i));
+                    firstByte.add(info.getFirstByteHistograms().get(i));
+                }
+                counter += h.getTotalCount();
+                errors += info.getErrors().get(i);
+                delayed += info.getDelayed().get(i);
+                dropped += info.getDropped().get(i);
+                bytes += info.getBytes().get(i);
+            }
+            if (i < info.getSendLagHistograms().size()) {
+                sendLag.add(info.getSendLagHistograms().get(i));
+                hiccups.add(info.getHiccupHistograms().get(i));
+            }
+        }
+        return new StatisticTick(latency, serviceTime, firstByte, counter, errors, delayed, dropped, bytes, sendLag, hiccups);
+    }
+
+    /**
+     * @param names of the endpoints of the request mix, in order
+     */
+    public static List<StatisticEndpoint> convertEndpoints(List<Statistic> stats, List<String> names) {
+        List<StatisticEndpoint> result = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
             Histogram latency = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
-            long counter = 0;
+            long errors = 0;
             for (Statistic info : stats) {
-                if (i < info.getHistograms().size()) {
-                    Histogram h = info.getHistograms().get(i);
-                    if (h.getTotalCount() > 0) {
-                        latency.add(h);
-                    }
-                    counter += h.getTotalCount();
+                if (i < info.getEndpointHistograms().size()) {
+                    latency.add(info.getEndpointHistograms().get(i));
+                    errors += info.getEndpointErrors().get(i);
                 }
             }
-            result.add(new StatisticTick(latency, counter));
+            result.add(new StatisticEndpoint(names.get(i), latency, errors));
         }
         return result;
     }
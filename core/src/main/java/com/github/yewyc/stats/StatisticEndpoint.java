@@ -0,0 +1,17 @@
+package com.github.yewyc.stats;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * One endpoint of the request mix over a whole phase
+ *
+ * @param name method and path
+ * @param latency response time, from the intended time
+ * @param errors non-200 responses and reset streams. The requests lost with their connection are only in the phase.
+ */
+public record StatisticEndpoint(String name, Histogram latency, long errors) {
+
+    public long requests() {
+        return latency.getTotalCount();
+    }
+}
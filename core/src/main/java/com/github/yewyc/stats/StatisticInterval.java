@@ -0,0 +1,21 @@
+package com.github.yewyc.stats;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Response times recorded since the previous report. The histogram carries the start and end time stamps of the interval.
+ *
+ * @param latency response time, measured from the intended send time
+ * @param serviceTime service time, measured from the actual send time to the last byte of the response
+ * @param firstByte time from the actual send time to the response headers
+ * @param errors number of responses that were not successful
+ * @param delayed number of requests sent late because the channel was not writable
+ * @param dropped number of requests never sent
+ * @param bytes read from the sockets, headers included
+ */
+public record StatisticInterval(Histogram latency, Histogram serviceTime, Histogram firstByte, long errors, long delayed, long dropped, long bytes) {
+
+    public long counter() {
+        return latency.getTotalCount();
+    }
+}
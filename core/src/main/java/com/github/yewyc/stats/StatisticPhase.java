@@ -1,87 +1,280 @@
 package com.github.yewyc.stats;
 
+import org.HdrHistogram.AbstractHistogram;
 import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
 
 import java.time.Duration;
-import java.util.DoubleSummaryStatistics;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 import static com.github.yewyc.stats.Statistic.highestTrackableValue;
 import static com.github.yewyc.stats.Statistic.numberOfSignificantValueDigits;
 
+/**
+ * The statistics of the whole phase are merged from its ticks once, when they are first read, then kept: the report,
+ * the plot and the SLO of a capacity search read them again. The merged histograms must not be modified.
+ */
 public class StatisticPhase {
 
     private final String name;
     private final Duration phaseDuration;
     private final List<StatisticTick> statisticTicks;
+    private final double targetRate;
+    private final double achievedRate;
+    private final List<StatisticEndpoint> endpoints;
+
+    // computed on the first read
+    private RateStatistics throughput;
+    private RateStatistics latency;
+    private RateStatistics serviceTime;
+    private RateStatistics firstByte;
+    private Histogram latencyHistogram;
+    private Histogram serviceTimeHistogram;
+    private Histogram firstByteHistogram;
+    private Histogram sendLagHistogram;
+    private Histogram hiccupHistogram;
 
     public StatisticPhase(String name, Duration phaseDuration, List<StatisticTick> statisticTicks) {
+        this(name, phaseDuration, statisticTicks, 0, 0);
+    }
+
+    /**
+     * @param targetRate requests per second requested by an open model, 0 for a closed model
+     * @param achievedRate requests per second actually sent
+     */
+    public StatisticPhase(String name, Duration phaseDuration, List<StatisticTick> statisticTicks, double targetRate, double achievedRate) {
+        this(name, phaseDuration, statisticTicks, targetRate, achievedRate, List.of());
+    }
+
+    /**
+     * @param endpoints the phase by endpoint of the request mix, empty with a single endpoint
+     */
+    public StatisticPhase(String name, Duration phaseDuration, List<StatisticTick> statisticTicks, double targetRate, double achievedRate, List<StatisticEndpoint> endpoints) {
         this.name = name;
         this.phaseDuration = phaseDuration;
         this.statisticTicks = statisticTicks;
+        this.targetRate = targetRate;
+        this.achievedRate = achievedRate;
+        this.endpoints = endpoints;
     }
 
     public String getName() {
         return this.name;
     }
 
-    public RateStatistics getThroughput() {
+    public synchronized RateStatistics getThroughput() {
+        if (throughput == null) {
+            throughput = throughputStatistics();
+        }
+        return throughput;
+    }
+
+    private RateStatistics throughputStatistics() {
         if (statisticTicks.isEmpty()) return new RateStatistics(0, 0, 0, 0, 0, 0);
 
-        // 1. Basic Stats
-        DoubleSummaryStatistics stats = statisticTicks.stream()
-                .mapToDouble(StatisticTick::counter)
-                .summaryStatistics();
-
-        double mean = stats.getAverage();
-        double max = stats.getMax();
-        long sum = (long) stats.getSum();
-        long count = stats.getCount();
-
-        // 2. Std Dev
-        double variance = statisticTicks.stream()
-                .mapToDouble(s -> Math.pow(s.counter() - mean, 2))
-                .sum() / count;
-        double stdDev = Math.sqrt(variance);
-
-        // 3. % Within Stdev
-        long countWithin = statisticTicks.stream()
-                .filter(s -> s.counter() >= (mean - stdDev) && s.counter() <= (mean + stdDev))
-                .count();
+        // 1. Basic Stats and Std Dev in one pass
+        long sum = 0;
+        double sumOfSquares = 0;
+        double max = 0;
+        for (StatisticTick tick : statisticTicks) {
+            sum += tick.counter();
+            sumOfSquares += (double) tick.counter() * tick.counter();
+            max = Math.max(max, tick.counter());
+        }
+        long count = statisticTicks.size();
+        double mean = (double) sum / count;
+        double stdDev = Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+
+        // 2. % Within Stdev
+        long countWithin = 0;
+        for (StatisticTick tick : statisticTicks) {
+            if (tick.counter() >= (mean - stdDev) && tick.counter() <= (mean + stdDev)) {
+                countWithin++;
+            }
+        }
         double pct = (countWithin * 100.0) / count;
 
         return new RateStatistics(mean, max, stdDev, pct, sum, count);
     }
 
-    public RateStatistics getLatency() {
-        if (statisticTicks.isEmpty()) return new RateStatistics(0, 0, 0, 0, 0, 0);
+    /**
+     * Response time: measured from the time the request should have been sent
+     */
+    public synchronized RateStatistics getLatency() {
+        if (latency == null) {
+            latency = latencyStatistics(getLatencyHistogram());
+        }
+        return latency;
+    }
 
+    /**
+     * Service time: measured from the time the request was sent. The difference to {@link #getLatency()} is the
+     * queueing delay that coordinated omission would have hidden.
+     */
+    public synchronized RateStatistics getServiceTime() {
+        if (serviceTime == null) {
+            serviceTime = latencyStatistics(getServiceTimeHistogram());
+        }
+        return serviceTime;
+    }
+
+    /**
+     * Time to first byte: from the time the request was sent to the response headers. The rest of the service time is
+     * the transfer of the body, so a slow server and a slow stream don't look the same.
+     */
+    public synchronized RateStatistics getFirstByte() {
+        if (firstByte == null) {
+            firstByte = latencyStatistics(getFirstByteHistogram());
+        }
+        return firstByte;
+    }
+
+    /**
+     * All the seconds of the phase merged
+     */
+    public synchronized Histogram getLatencyHistogram() {
+        if (latencyHistogram == null) {
+            latencyHistogram = merge(StatisticTick::latency);
+        }
+        return latencyHistogram;
+    }
+
+    public synchronized Histogram getServiceTimeHistogram() {
+        if (serviceTimeHistogram == null) {
+            serviceTimeHistogram = merge(StatisticTick::serviceTime);
+        }
+        return serviceTimeHistogram;
+    }
+
+    public synchronized Histogram getFirstByteHistogram() {
+        if (firstByteHistogram == null) {
+            firstByteHistogram = merge(StatisticTick::firstByte);
+        }
+        return firstByteHistogram;
+    }
+
+    /**
+     * How late the load generator made the sends it scheduled. Only the open model and the timer of wrk2 record it
+     */
+    public synchronized Histogram getSendLagHistogram() {
+        if (sendLagHistogram == null) {
+            sendLagHistogram = merge(StatisticTick::sendLag);
+        }
+        return sendLagHistogram;
+    }
+
+    /**
+     * How late the event loops of the load generator woke up a probe that sleeps 1ms
+     */
+    public synchronized Histogram getHiccupHistogram() {
+        if (hiccupHistogram == null) {
+            hiccupHistogram = merge(StatisticTick::hiccups);
+        }
+        return hiccupHistogram;
+    }
+
+    /**
+     * @return the seconds, from 1, where the load generator lagged more than the threshold. Their measurements
+     * reflect the load generator as much as the server
+     */
+    public List<Integer> getLaggingSeconds(long thresholdNs) {
+        List<Integer> seconds = new ArrayList<>();
+        for (int i = 0; i < statisticTicks.size(); i++) {
+            if (statisticTicks.get(i).generatorLag() > thresholdNs) {
+                seconds.add(i + 1);
+            }
+        }
+        return seconds;
+    }
+
+    private Histogram merge(Function<StatisticTick, AbstractHistogram> series) {
         Histogram allLatencies = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
         for (StatisticTick statisticTick : statisticTicks) {
-            allLatencies.add(statisticTick.latency());
+            allLatencies.add(series.apply(statisticTick));
         }
+        return allLatencies;
+    }
 
-        // 1. Basic Stats directly from Histogram
-        double mean = allLatencies.getMean(); // Note: HdrHistogram mean is in raw units (nanos/micros)
-        double max = allLatencies.getMaxValue();
-        double stdDev = allLatencies.getStdDeviation();
+    private static RateStatistics latencyStatistics(Histogram allLatencies) {
         long totalCount = allLatencies.getTotalCount();
+        if (totalCount == 0) return new RateStatistics(0, 0, 0, 0, 0, 0);
 
-        // 2. % Within Stdev (Iterating buckets)
+        // 1. Basic Stats in a single pass over the histogram. Same as getMean and getStdDeviation, which walk it twice
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (HistogramIterationValue value : allLatencies.recordedValues()) {
+            double medianEquivalent = allLatencies.medianEquivalentValue(value.getValueIteratedTo());
+            sum += medianEquivalent * value.getCountAtValueIteratedTo();
+            sumOfSquares += medianEquivalent * medianEquivalent * value.getCountAtValueIteratedTo();
+        }
+        double mean = sum / totalCount; // Note: HdrHistogram mean is in raw units (nanos/micros)
+        double stdDev = Math.sqrt(Math.max(0, sumOfSquares / totalCount - mean * mean));
+        double max = allLatencies.getMaxValue();
+
+        // 2. % Within Stdev, summing the counts of the buckets in the range
         double lower = mean - stdDev;
         double upper = mean + stdDev;
-        long sumWithin = 0;
-
-        for (var value : allLatencies.allValues()) {
-            if (value.getValueIteratedTo() >= lower && value.getValueIteratedTo() <= upper) {
-                sumWithin += value.getCountAddedInThisIterationStep();
-            }
-        }
+        long sumWithin = allLatencies.getCountBetweenValues((long) Math.max(0, Math.floor(lower)), (long) Math.ceil(upper));
         double pct = (sumWithin * 100.0) / totalCount;
 
         return new RateStatistics(mean, max, stdDev, pct, 0, totalCount);
     }
 
+    public long getErrors() {
+        long errors = 0;
+        for (StatisticTick statisticTick : statisticTicks) {
+            errors += statisticTick.errors();
+        }
+        return errors;
+    }
+
+    public long getDelayed() {
+        long delayed = 0;
+        for (StatisticTick statisticTick : statisticTicks) {
+            delayed += statisticTick.delayed();
+        }
+        return delayed;
+    }
+
+    public long getDropped() {
+        long dropped = 0;
+        for (StatisticTick statisticTick : statisticTicks) {
+            dropped += statisticTick.dropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * @return bytes read from the sockets, headers included
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for (StatisticTick statisticTick : statisticTicks) {
+            bytes += statisticTick.bytes();
+        }
+        return bytes;
+    }
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    public double getAchievedRate() {
+        return achievedRate;
+    }
+
+    /**
+     * @return how far the achieved rate is from the target, in percent. 0 without a target.
+     */
+    public double getRateDeviation() {
+        if (targetRate == 0) {
+            return 0;
+        }
+        return (achievedRate - targetRate) * 100.0 / targetRate;
+    }
+
     public Duration duration() {
         return this.phaseDuration;
     }
@@ -89,4 +282,8 @@ public class StatisticPhase {
     public List<StatisticTick> getStatisticTicks() {
         return statisticTicks;
     }
+
+    public List<StatisticEndpoint> getEndpoints() {
+        return endpoints;
+    }
 }
@@ -1,6 +1,36 @@
 package com.github.yewyc.stats;
 
 import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.Histogram;
 
-public record StatisticTick(AbstractHistogram latency, long counter) {
+import static com.github.yewyc.stats.Statistic.numberOfSignificantValueDigits;
+
+/**
+ * @param latency response time, measured from the intended send time
+ * @param serviceTime service time, measured from the actual send time to the last byte of the response
+ * @param firstByte time from the actual send time to the response headers
+ * @param counter number of responses
+ * @param errors number of responses that were not successful
+ * @param delayed number of requests sent late because the channel was not writable
+ * @param dropped number of requests never sent
+ * @param bytes read from the sockets, headers included
+ * @param sendLag how late the load generator made the sends it scheduled, from the intended time
+ * @param hiccups how late the event loops woke up a probe
+ */
+public record StatisticTick(AbstractHistogram latency, AbstractHistogram serviceTime, AbstractHistogram firstByte, long counter, long errors, long delayed, long dropped, long bytes, AbstractHistogram sendLag, AbstractHistogram hiccups) {
+
+    /**
+     * Without the lag of the load generator, e.g. from a log
+     */
+    public StatisticTick(AbstractHistogram latency, AbstractHistogram serviceTime, AbstractHistogram firstByte, long counter, long errors, long delayed, long dropped, long bytes) {
+        this(latency, serviceTime, firstByte, counter, errors, delayed, dropped, bytes, new Histogram(numberOfSignificantValueDigits), new Histogram(numberOfSignificantValueDigits));
+    }
+
+    /**
+     * @return the worst lag of the load generator in this second: its measurements of the server are not reliable
+     * when it is high
+     */
+    public long generatorLag() {
+        return Math.max(sendLag.getMaxValue(), hiccups.getMaxValue());
+    }
 }
@@ -18,7 +18,7 @@ public class Wrk2 extends WrkAbstract {
 
     @Override
     protected void validate(Benchmark benchmark) {
-        if (benchmark.getRecord().rate() <= 0) {
+        if (benchmark.getRecord().phases().isEmpty() && benchmark.getRecord().rate() <= 0) {
             throw new IllegalStateException("Rate should be greater than 0");
         }
     }
@@ -2,20 +2,44 @@ package com.github.yewyc.wrk;
 
 import com.github.yewyc.benchmark.Benchmark;
 import com.github.yewyc.benchmark.BenchmarkRecord;
+import com.github.yewyc.benchmark.Calibration;
+import com.github.yewyc.benchmark.Phase;
+import com.github.yewyc.benchmark.ProgressListener;
+import com.github.yewyc.benchmark.TlsEngine;
+import com.github.yewyc.benchmark.TlsHandshakes;
+import com.github.yewyc.benchmark.Transport;
+import com.github.yewyc.hdrlog.HistogramLogExporter;
+import com.github.yewyc.loadgenerator.ArrivalProcess;
+import com.github.yewyc.loadgenerator.BodyCorpus;
 import com.github.yewyc.loadgenerator.LoadStrategy;
+import com.github.yewyc.loadgenerator.Protocol;
+import com.github.yewyc.loadgenerator.RequestMix;
+import com.github.yewyc.stats.Percentiles;
 import com.github.yewyc.stats.RateStatistics;
+import com.github.yewyc.stats.StatisticEndpoint;
+import com.github.yewyc.stats.StatisticInterval;
 import com.github.yewyc.stats.StatisticPhase;
 import com.github.yewyc.stats.StatisticTick;
+import org.HdrHistogram.Histogram;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static com.github.yewyc.stats.Statistic.scale;
 
 public abstract class WrkAbstract {
 
+    private static final int DEFAULT_CALIBRATION_SECONDS = 5;
+    private static final Duration CALIBRATION_WARM_UP = Duration.ofSeconds(2);
+
     protected void exec(String[] args) {
 
         boolean detectBlockingOperation = System.getProperty("detectBlockingOperation", "false").equals("true");
@@ -27,30 +51,120 @@ public abstract class WrkAbstract {
 
         // --timeout 2s --threads 2 --connections 10 --duration 30s --rate 100000 http://localhost:8080/hello
         if (args.length == 0) {
-            System.err.println("Usage: WrkMain --timeout <timeout> --threads <threads> --connections <connections> --duration <duration> --rate <rate> http://localhost:8080/");
+            System.err.println("Usage: WrkMain --timeout <timeout> --threads <threads> --connections <connections> --duration <duration> --rate <rate> [--transport nio|epoll|io_uring|local] [--calibrate [<seconds>]] [--arrival uniform|poisson|replay:<file>] [--pipeline <depth>] [--protocol http1|h2c] [--tls-engine jdk|openssl] [--tls-session-resumption] [--mix <file>] [--body-corpus <file> [--body-order round_robin|random]] [--warmup <seconds>] [--phases <name>:<duration>:<rate>,...] [--latency] [--lag-threshold <ms>] [--progress] [--hdr-log <file> [--hdr-log-event-loops]] http://localhost:8080/");
             return;
         }
-        Map<String, String> params = new HashMap<>();
-        for (int i = 0; i < args.length - 1; i += 2) {
-            params.put(args[i].substring(2), args[i + 1]);
+        Map<String, String> params = parseParams(args);
+
+        String url = args[args.length - 1];
+        int threads = Integer.parseInt(params.get("threads"));
+        int connections = Integer.parseInt(params.get("connections"));
+        BenchmarkRecord benchmarkRecord = record(params, url, getMode());
+        if (params.containsKey("calibrate")) {
+            String seconds = params.get("calibrate");
+            printCalibration(benchmarkRecord, Duration.ofSeconds(seconds.equals("true") ? DEFAULT_CALIBRATION_SECONDS : Integer.parseInt(seconds.replace("s", ""))));
         }
 
+        try (Benchmark benchmark =  new Benchmark(benchmarkRecord);
+             HistogramLogExporter exporter = params.containsKey("hdr-log") ? new HistogramLogExporter(new File(params.get("hdr-log")), benchmarkRecord, params.containsKey("hdr-log-event-loops")) : null) {
+            validate(benchmark);
+            if (params.containsKey("progress")) {
+                benchmark.progress(new WrkProgress());
+            }
+            if (exporter != null) {
+                benchmark.progress(exporter);
+            }
+            benchmark
+                    .start()
+                    .generateReport(new WrkAbstract.WrkStats(threads, connections, url, params.containsKey("latency"), Double.parseDouble(params.getOrDefault("lag-threshold", String.valueOf(WrkStats.DEFAULT_LAG_THRESHOLD_MS)))));
+            if (benchmarkRecord.isTls()) {
+                printTlsHandshakes(benchmark.getTlsHandshakes());
+            }
+            benchmark.plot();
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static BenchmarkRecord record(Map<String, String> params, String url, LoadStrategy mode) {
         Duration timeout = Duration.ofSeconds(Integer.parseInt(params.get("timeout").replace("s", "")));
         int threads = Integer.parseInt(params.get("threads"));
-        int connections = Integer.parseInt(params.get("connections"));;
-        int duration = Integer.parseInt(params.get("duration").replace("s", ""));
+        int connections = Integer.parseInt(params.get("connections"));
+        // the phases replace the warm-up and the test
+        List<Phase> phases = params.containsKey("phases") ? Phase.parsePlan(params.get("phases")) : List.of();
+        int duration = params.containsKey("duration") ? Integer.parseInt(params.get("duration").replace("s", "")) : Math.toIntExact(phases.stream().mapToLong(phase -> phase.duration().toSeconds()).sum());
+        int warmUp = Integer.parseInt(params.getOrDefault("warmup", "6").replace("s", ""));
         int rate = params.containsKey("rate") ? Integer.parseInt(params.get("rate")) : 0;
-        String url = args[args.length - 1];
+        Transport transport = Transport.valueOf(params.getOrDefault("transport", Transport.nio.name()));
+        int pipeline = Integer.parseInt(params.getOrDefault("pipeline", "1"));
+        Protocol protocol = Protocol.valueOf(params.getOrDefault("protocol", Protocol.http1.name()));
+        TlsEngine tlsEngine = TlsEngine.valueOf(params.getOrDefault("tls-engine", TlsEngine.jdk.name()));
+        boolean tlsSessionResumption = params.containsKey("tls-session-resumption");
+
+        ArrivalProcess arrival;
+        RequestMix mix;
+        try {
+            arrival = ArrivalProcess.parse(params.getOrDefault("arrival", "uniform"));
+            mix = params.containsKey("mix") ? RequestMix.parse(new File(params.get("mix"))) : null;
+            if (params.containsKey("body-corpus")) {
+                BodyCorpus.Order order = BodyCorpus.Order.valueOf(params.getOrDefault("body-order", BodyCorpus.Order.round_robin.name()));
+                BodyCorpus corpus = BodyCorpus.map(new File(params.get("body-corpus")), order);
+                // without a mix, the bodies are posted to the url
+                mix = (mix != null ? mix : RequestMix.post(URI.create(url).getPath())).withCorpus(corpus);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new BenchmarkRecord(threads, Duration.ofSeconds(duration), rate, connections, url, Duration.ofSeconds(warmUp), timeout, mode, transport, arrival, phases, pipeline, protocol, tlsEngine, tlsSessionResumption, mix);
+    }
 
-        BenchmarkRecord benchmarkRecord = new BenchmarkRecord(threads, Duration.ofSeconds(duration), rate, connections, url, Duration.ofSeconds(6), timeout, getMode());
+    /**
+     * --name value, or --name alone for a flag. The last argument is the url.
+     */
+    static Map<String, String> parseParams(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i < args.length - 1; i++) {
+            String name = args[i].substring(2);
+            if (i + 1 < args.length - 1 && !args[i + 1].startsWith("--")) {
+                params.put(name, args[++i]);
+            } else {
+                params.put(name, "true");
+            }
+        }
+        return params;
+    }
 
-        try (Benchmark benchmark =  new Benchmark(benchmarkRecord)) {
-            validate(benchmark);
-            benchmark
-                    .start()
-                    .generateReport(new WrkAbstract.WrkStats(threads, connections, url))
-                    .plot();
+    /*
+     * The ceiling of the load generator, before the run so its result can be read against it
+     */
+    private static void printCalibration(BenchmarkRecord record, Duration duration) {
+        Calibration calibration = Calibration.measure(record, CALIBRATION_WARM_UP, duration);
+        double ceiling = calibration.requestsPerSecond();
+        System.out.println("Calibration in this JVM, " + record.threads() + " threads and " + record.connections() + " connections: " +
+                calibration.requests() + " requests in " + String.format("%.2f", calibration.duration().toMillis() / 1_000.0) + "s");
+        System.out.println("  Generator ceiling: " + String.format("%.2f", ceiling) + " requests/sec");
+        if (!Double.isNaN(calibration.cpuTimePerRequest())) {
+            System.out.println("  Generator CPU:     " + String.format("%.2f", calibration.cpuTimePerRequest() / 1_000.0) + "us per request");
         }
+        if (record.mode() != LoadStrategy.wrk) {
+            double rate = record.plan().stream().mapToDouble(phase -> phase.rate().averageRate(phase.duration())).max().orElse(0);
+            if (rate >= ceiling) {
+                System.out.println("  The rate of " + String.format("%.2f", rate) + " is above the ceiling: the run will measure the load generator, not the server");
+            }
+        }
+    }
+
+    /*
+     * After the report of the phases. The handshakes were made when the connections opened, before the first phase,
+     * so they are not in its latency
+     */
+    private static void printTlsHandshakes(TlsHandshakes handshakes) {
+        Histogram durations = handshakes.getDurations();
+        System.out.println("TLS handshakes: " + handshakes.getCount() + ", resumed: " + handshakes.getResumed());
+        System.out.println("  Avg " + String.format("%.2f", durations.getMean() / scale) + "ms" +
+                "  p50 " + String.format("%.2f", durations.getValueAtPercentile(50) / scale) + "ms" +
+                "  p99 " + String.format("%.2f", durations.getValueAtPercentile(99) / scale) + "ms" +
+                "  Max " + String.format("%.2f", durations.getMaxValue() / scale) + "ms");
     }
 
     protected abstract LoadStrategy getMode();
@@ -59,20 +173,43 @@ public abstract class WrkAbstract {
 
     protected static class WrkStats implements Consumer<StatisticPhase> {
 
+        private static final double[] TICK_PERCENTILES = {99, 100};
+        static final double DEFAULT_LAG_THRESHOLD_MS = 10;
+
         private int threads;
         private int connections;
         private String url;
+        private boolean latencyDistribution;
+        private long lagThresholdNs;
 
         public WrkStats(int threads, int connections, String url) {
+            this(threads, connections, url, false);
+        }
+
+        /**
+         * @param latencyDistribution prints the percentile spectrum, like wrk2 --latency
+         */
+        public WrkStats(int threads, int connections, String url, boolean latencyDistribution) {
+            this(threads, connections, url, latencyDistribution, DEFAULT_LAG_THRESHOLD_MS);
+        }
+
+        /**
+         * @param lagThresholdMs flags the seconds where the load generator lagged more
+         */
+        public WrkStats(int threads, int connections, String url, boolean latencyDistribution, double lagThresholdMs) {
             this.threads = threads;
             this.connections = connections;
             this.url = url;
+            this.latencyDistribution = latencyDistribution;
+            this.lagThresholdNs = (long) (lagThresholdMs * scale);
         }
 
         @Override
         public void accept(StatisticPhase statisticPhase) {
             RateStatistics throughput = statisticPhase.getThroughput();
             RateStatistics latency = statisticPhase.getLatency();
+            RateStatistics serviceTime = statisticPhase.getServiceTime();
+            RateStatistics firstByte = statisticPhase.getFirstByte();
 
             double duration = statisticPhase.duration().toMillis() / 1_000.0;
 
@@ -80,7 +217,7 @@ public abstract class WrkAbstract {
             System.out.println("  " + threads + " threads and " + connections + " connections");
             System.out.println("  Thread Stats   Avg      Stdev     Max   +/- Stdev");
 
-            // latency
+            // latency: from the intended time, corrected for coordinated omission
             System.out.println("    Latency   " +
                     String.format("%8.2f  ", latency.mean / scale) +
                     String.format("%8.2f  ", latency.stdDev / scale) +
@@ -88,6 +225,22 @@ public abstract class WrkAbstract {
                     String.format("%8.2f", latency.pctWithinStdev) + "%"
             );
 
+            // service time: from the time the request was sent
+            System.out.println("    Service   " +
+                    String.format("%8.2f  ", serviceTime.mean / scale) +
+                    String.format("%8.2f  ", serviceTime.stdDev / scale) +
+                    String.format("%8.2f  ", serviceTime.max / scale) + "   " +
+                    String.format("%8.2f", serviceTime.pctWithinStdev) + "%"
+            );
+
+            // time to first byte: from the time the request was sent to the response headers
+            System.out.println("    TTFB      " +
+                    String.format("%8.2f  ", firstByte.mean / scale) +
+                    String.format("%8.2f  ", firstByte.stdDev / scale) +
+                    String.format("%8.2f  ", firstByte.max / scale) + "   " +
+                    String.format("%8.2f", firstByte.pctWithinStdev) + "%"
+            );
+
             System.out.println("    Req/Sec   " +
                     String.format("%8.2f  ", throughput.mean) +
                     String.format("%8.2f  ", throughput.stdDev) +
@@ -95,16 +248,148 @@ public abstract class WrkAbstract {
                     String.format("%8.2f", throughput.pctWithinStdev) + "%"
             );
 
-            System.out.println("  " + throughput.totalSum + " requests in " + String.format("%.2f", duration) + "s, __MB read");
+            if (latencyDistribution) {
+                printLatencyDistribution(statisticPhase);
+            }
+
+            long bytes = statisticPhase.getBytes();
+            System.out.println("  " + throughput.totalSum + " requests in " + String.format("%.2f", duration) + "s, " + formatBytes(bytes) + " read");
+            long errors = statisticPhase.getErrors();
+            if (errors > 0) {
+                System.out.println("  Non-2xx or 3xx responses: " + errors);
+            }
+            long delayed = statisticPhase.getDelayed();
+            long dropped = statisticPhase.getDropped();
+            if (delayed > 0 || dropped > 0) {
+                // the channel was not writable: the load was not sent when intended
+                System.out.println("  Delayed sends: " + delayed + ", dropped sends: " + dropped);
+            }
             System.out.println("Requests/sec: " + String.format("%8.2f", throughput.totalSum / duration));
-            System.out.println("Transfer/sec:  __MB");
+            if (statisticPhase.getTargetRate() > 0) {
+                System.out.println("Sent/sec:     " + String.format("%8.2f", statisticPhase.getAchievedRate()) +
+                        " (target " + String.format("%.2f", statisticPhase.getTargetRate()) +
+                        ", deviation " + String.format("%+.2f", statisticPhase.getRateDeviation()) + "%)");
+            }
+            System.out.println("Transfer/sec: " + String.format("%8s", formatBytes(duration > 0 ? (long) (bytes / duration) : 0)));
+            printGeneratorLag(statisticPhase);
+            if (!statisticPhase.getEndpoints().isEmpty()) {
+                printEndpoints(statisticPhase.getEndpoints());
+            }
 
             System.out.println("-----");
             for (int i = 0; i < statisticPhase.getStatisticTicks().size(); i++) {
                 StatisticTick tick = statisticPhase.getStatisticTicks().get(i);
-                System.out.println((i + 1) + " (" + tick.counter() + ")=" + String.format("%14.2f ", tick.latency().getMean() / scale) + "ms");
+                String line = (i + 1) + " (" + tick.counter() + ")=" + String.format("%14.2f ", tick.latency().getMean() / scale) + "ms" +
+                        " service=" + String.format("%14.2f ", tick.serviceTime().getMean() / scale) + "ms" +
+                        " ttfb=" + String.format("%14.2f ", tick.firstByte().getMean() / scale) + "ms";
+                if (latencyDistribution) {
+                    long[] values = Percentiles.valuesAtPercentiles(tick.latency(), TICK_PERCENTILES);
+                    line += " p99=" + String.format("%10.2f ", values[0] / scale) + "ms" +
+                            " max=" + String.format("%10.2f ", values[1] / scale) + "ms";
+                }
+                if (tick.generatorLag() > lagThresholdNs) {
+                    line += " <- generator lag " + String.format("%.2f", tick.generatorLag() / scale) + "ms";
+                }
+                System.out.println(line);
             }
             System.out.println("-----");
         }
+
+        /*
+         * Nothing when it was not recorded, e.g. a run read from a log
+         */
+        private void printGeneratorLag(StatisticPhase statisticPhase) {
+            Histogram sendLag = statisticPhase.getSendLagHistogram();
+            Histogram hiccups = statisticPhase.getHiccupHistogram();
+            if (sendLag.getTotalCount() == 0 && hiccups.getTotalCount() == 0) {
+                return;
+            }
+            System.out.println("Generator lag: send p99 " + String.format("%.2f", sendLag.getValueAtPercentile(99) / scale) + "ms" +
+                    " max " + String.format("%.2f", sendLag.getMaxValue() / scale) + "ms" +
+                    ", hiccups p99 " + String.format("%.2f", hiccups.getValueAtPercentile(99) / scale) + "ms" +
+                    " max " + String.format("%.2f", hiccups.getMaxValue() / scale) + "ms");
+            List<Integer> lagging = statisticPhase.getLaggingSeconds(lagThresholdNs);
+            if (!lagging.isEmpty()) {
+                // the load generator was the bottleneck: these seconds measure it as much as the server
+                System.out.println("  Seconds over " + String.format("%.2f", lagThresholdNs / scale) + "ms of generator lag: " +
+                        lagging.stream().map(String::valueOf).collect(Collectors.joining(", ")));
+            }
+        }
+
+        /*
+         * Like wrk: binary units, two decimals
+         */
+        private static String formatBytes(long bytes) {
+            String[] units = {"B", "KB", "MB", "GB", "TB"};
+            double value = bytes;
+            int unit = 0;
+            while (value >= 1024 && unit < units.length - 1) {
+                value /= 1024;
+                unit++;
+            }
+            return String.format("%.2f", value) + units[unit];
+        }
+
+        private static void printEndpoints(List<StatisticEndpoint> endpoints) {
+            int width = Math.max("Endpoint".length(), endpoints.stream().mapToInt(endpoint -> endpoint.name().length()).max().orElse(0));
+            System.out.println("    " + String.format("%-" + width + "s", "Endpoint") +
+                    String.format("%10s%10s%10s%10s%10s%10s", "Requests", "Errors", "Avg", "p50", "p99", "Max"));
+            for (StatisticEndpoint endpoint : endpoints) {
+                Histogram latency = endpoint.latency();
+                System.out.println("    " + String.format("%-" + width + "s", endpoint.name()) +
+                        String.format("%10d", endpoint.requests()) +
+                        String.format("%10d", endpoint.errors()) +
+                        String.format("%8.2fms", latency.getMean() / scale) +
+                        String.format("%8.2fms", latency.getValueAtPercentile(50) / scale) +
+                        String.format("%8.2fms", latency.getValueAtPercentile(99) / scale) +
+                        String.format("%8.2fms", latency.getMaxValue() / scale));
+            }
+        }
+
+        private void printLatencyDistribution(StatisticPhase statisticPhase) {
+            Histogram latency = statisticPhase.getLatencyHistogram();
+            long[] latencyValues = Percentiles.valuesAtPercentiles(latency, Percentiles.SPECTRUM);
+            long[] serviceTimeValues = Percentiles.valuesAtPercentiles(statisticPhase.getServiceTimeHistogram(), Percentiles.SPECTRUM);
+            long[] firstByteValues = Percentiles.valuesAtPercentiles(statisticPhase.getFirstByteHistogram(), Percentiles.SPECTRUM);
+
+            System.out.println("  Latency Distribution (HdrHistogram - Recorded Latency)");
+            System.out.println("                Latency     Service        TTFB");
+            for (int i = 0; i < Percentiles.SPECTRUM.length; i++) {
+                System.out.println(String.format("%9.4f%%", Percentiles.SPECTRUM[i]) +
+                        String.format("%10.2fms", latencyValues[i] / scale) +
+                        String.format("%10.2fms", serviceTimeValues[i] / scale) +
+                        String.format("%10.2fms", firstByteValues[i] / scale));
+            }
+            System.out.println();
+            System.out.println("  Detailed Percentile spectrum:");
+            latency.outputPercentileDistribution(System.out, 5, scale);
+            System.out.println("----------------------------------------------------------");
+        }
+    }
+
+    protected static class WrkProgress implements ProgressListener {
+
+        private String phase;
+        private int second;
+
+        @Override
+        public void onInterval(String phase, StatisticInterval interval, List<StatisticInterval> eventLoopIntervals) {
+            if (!phase.equals(this.phase)) {
+                this.phase = phase;
+                this.second = 0;
+            }
+            this.second++;
+            double seconds = (interval.latency().getEndTimeStamp() - interval.latency().getStartTimeStamp()) / 1_000.0;
+            double requestsPerSecond = seconds > 0 ? interval.counter() / seconds : 0;
+            System.out.println("  [" + phase + "] " + String.format("%4d", second) + "s" +
+                    "  Req/Sec " + String.format("%10.2f", requestsPerSecond) +
+                    "  p50 " + String.format("%8.2f", interval.latency().getValueAtPercentile(50) / scale) + "ms" +
+                    "  p99 " + String.format("%8.2f", interval.latency().getValueAtPercentile(99) / scale) + "ms" +
+                    "  p99.9 " + String.format("%8.2f", interval.latency().getValueAtPercentile(99.9) / scale) + "ms" +
+                    "  errors " + interval.errors() +
+                    "  delayed " + interval.delayed() +
+                    "  dropped " + interval.dropped()
+            );
+        }
     }
 }
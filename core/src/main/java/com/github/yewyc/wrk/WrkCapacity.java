@@ -0,0 +1,77 @@
+package com.github.yewyc.wrk;
+
+import com.github.yewyc.benchmark.Benchmark;
+import com.github.yewyc.benchmark.BenchmarkRecord;
+import com.github.yewyc.benchmark.Transport;
+import com.github.yewyc.capacity.CapacitySearch;
+import com.github.yewyc.capacity.Probe;
+import com.github.yewyc.capacity.Slo;
+import com.github.yewyc.loadgenerator.ArrivalProcess;
+import com.github.yewyc.loadgenerator.LoadStrategy;
+import com.github.yewyc.stats.Percentiles;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+import static com.github.yewyc.stats.Statistic.scale;
+
+/**
+ * Finds the maximum sustainable throughput: the highest open-model rate that meets the SLO. See {@link CapacitySearch}.
+ */
+public class WrkCapacity {
+
+    private static final double[] CURVE_PERCENTILES = {50, 90, 99, 99.9, 100};
+
+    public static void main(String[] args) throws IOException {
+        // --threads 2 --connections 100 --slo-latency 20 --slo-errors 0.1 http://localhost:8080/hello
+        if (args.length == 0) {
+            System.err.println("Usage: WrkCapacity --threads <threads> --connections <connections> [--timeout <timeout>] [--transport nio|epoll|io_uring] [--arrival uniform|poisson|replay:<file>] [--warmup <seconds>] [--probe-duration <seconds>] [--start-rate <rate>] [--max-rate <rate>] [--slo-percentile <percentile>] [--slo-latency <ms>] [--slo-errors <percent>] [--precision <percent>] [--max-probes <probes>] [--progress] http://localhost:8080/");
+            return;
+        }
+        Map<String, String> params = WrkAbstract.parseParams(args);
+        String url = args[args.length - 1];
+
+        int threads = Integer.parseInt(params.get("threads"));
+        int connections = Integer.parseInt(params.get("connections"));
+        Duration timeout = Duration.ofSeconds(Integer.parseInt(params.getOrDefault("timeout", "2s").replace("s", "")));
+        Transport transport = Transport.valueOf(params.getOrDefault("transport", Transport.nio.name()));
+        ArrivalProcess arrival = ArrivalProcess.parse(params.getOrDefault("arrival", "uniform"));
+        Duration warmUp = Duration.ofSeconds(Integer.parseInt(params.getOrDefault("warmup", "6").replace("s", "")));
+        Duration probeDuration = Duration.ofSeconds(Integer.parseInt(params.getOrDefault("probe-duration", "10").replace("s", "")));
+        int startRate = Integer.parseInt(params.getOrDefault("start-rate", "1000"));
+        int maxRate = Integer.parseInt(params.getOrDefault("max-rate", "1000000"));
+        Slo slo = new Slo(Double.parseDouble(params.getOrDefault("slo-percentile", "99")),
+                Duration.ofMillis(Long.parseLong(params.getOrDefault("slo-latency", "20"))),
+                Double.parseDouble(params.getOrDefault("slo-errors", "0.1")));
+        double precision = Double.parseDouble(params.getOrDefault("precision", "5")) / 100;
+        int maxProbes = Integer.parseInt(params.getOrDefault("max-probes", "20"));
+
+        CapacitySearch search = new CapacitySearch(slo, startRate, maxRate, probeDuration, precision, maxProbes, warmUp);
+        BenchmarkRecord record = new BenchmarkRecord(threads, probeDuration, startRate, connections, url, warmUp, timeout, LoadStrategy.wrk3)
+                .withTransport(transport)
+                .withArrival(arrival);
+        try (Benchmark benchmark = new Benchmark(record)) {
+            if (params.containsKey("progress")) {
+                benchmark.progress(new WrkAbstract.WrkProgress());
+            }
+            benchmark.start(search);
+
+            System.out.println("Capacity search @ " + url);
+            System.out.println("  " + threads + " threads and " + connections + " connections, SLO p" + slo.percentile() + " < " + slo.latency().toMillis() + "ms, errors < " + slo.maxErrorRate() + "%");
+            System.out.println("      Rate      Sent       p50       p90       p99     p99.9       Max    Errors");
+            for (Probe probe : search.getProbes()) {
+                long[] values = Percentiles.valuesAtPercentiles(probe.phase().getLatencyHistogram(), CURVE_PERCENTILES);
+                StringBuilder line = new StringBuilder(String.format("%10.0f%10.2f", probe.rate(), probe.phase().getAchievedRate()));
+                for (long value : values) {
+                    line.append(String.format("%8.2fms", value / scale));
+                }
+                line.append(String.format("%10d", probe.phase().getErrors()));
+                line.append(probe.passed() ? "  ok" : "  FAILED " + probe.violation());
+                System.out.println(line);
+            }
+            System.out.println("Max sustainable rate: " + String.format("%.0f", search.getSustainableRate()) + " req/s");
+            benchmark.plot();
+        }
+    }
+}
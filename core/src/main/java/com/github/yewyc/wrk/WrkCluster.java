@@ -0,0 +1,69 @@
+package com.github.yewyc.wrk;
+
+import com.github.yewyc.benchmark.BenchmarkRecord;
+import com.github.yewyc.cluster.ClusterCoordinator;
+import com.github.yewyc.cluster.ClusterWorker;
+import com.github.yewyc.loadgenerator.LoadStrategy;
+import com.github.yewyc.plot.StatisticsPlot;
+import com.github.yewyc.stats.StatisticPhase;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distributed load generation: one coordinator and several workers in a JGroups cluster.
+ * <p>
+ * The workers are started first and serve the runs of the coordinator. The coordinator takes the wrk options and
+ * prints the report of all the workers merged.
+ */
+public class WrkCluster {
+
+    public static void main(String[] args) throws Exception {
+        // worker [--jgroups tcp.xml] [--runs 1]
+        // coordinator --workers 2 [--mode wrk3] [--jgroups tcp.xml] [--start-delay 5] --timeout 2s --threads 2 --connections 10 --duration 30s --rate 100000 http://localhost:8080/hello
+        if (args.length == 0 || !(args[0].equals("worker") || args[0].equals("coordinator"))) {
+            System.err.println("Usage: WrkCluster worker [--jgroups <config>] [--runs <runs>]");
+            System.err.println("       WrkCluster coordinator --workers <workers> [--mode wrk|wrk2|wrk3] [--jgroups <config>] [--start-delay <seconds>] [--latency] <wrk options> http://localhost:8080/");
+            return;
+        }
+        List<String> options = Arrays.asList(args).subList(1, args.length);
+        // the url is last for the coordinator, the worker has none
+        Map<String, String> params = WrkAbstract.parseParams(args[0].equals("worker") ? withPlaceholderUrl(options) : options.toArray(new String[0]));
+        String config = params.getOrDefault("jgroups", "udp.xml");
+
+        if (args[0].equals("worker")) {
+            int runs = Integer.parseInt(params.getOrDefault("runs", String.valueOf(Integer.MAX_VALUE)));
+            try (ClusterWorker worker = ClusterWorker.connect(config, WrkCluster::record)) {
+                worker.awaitRuns(runs);
+            }
+            return;
+        }
+
+        int workers = Integer.parseInt(params.get("workers"));
+        Duration startDelay = Duration.ofSeconds(Integer.parseInt(params.getOrDefault("start-delay", "5").replace("s", "")));
+        BenchmarkRecord record = record(options);
+        List<StatisticPhase> phases;
+        try (ClusterCoordinator coordinator = ClusterCoordinator.connect(config)) {
+            phases = coordinator.run(record, options, workers, startDelay);
+        }
+        WrkAbstract.WrkStats stats = new WrkAbstract.WrkStats(record.threads() * workers, record.connections(), record.urlBase(), params.containsKey("latency"));
+        for (StatisticPhase phase : phases) {
+            stats.accept(phase);
+        }
+        StatisticsPlot.plot(phases);
+    }
+
+    private static BenchmarkRecord record(List<String> options) {
+        Map<String, String> params = WrkAbstract.parseParams(options.toArray(new String[0]));
+        LoadStrategy mode = LoadStrategy.valueOf(params.getOrDefault("mode", LoadStrategy.wrk3.name()));
+        return WrkAbstract.record(params, options.get(options.size() - 1), mode);
+    }
+
+    private static String[] withPlaceholderUrl(List<String> options) {
+        String[] args = options.toArray(new String[options.size() + 1]);
+        args[options.size()] = "";
+        return args;
+    }
+}
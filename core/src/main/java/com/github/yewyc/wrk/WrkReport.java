@@ -0,0 +1,28 @@
+package com.github.yewyc.wrk;
+
+import com.github.yewyc.hdrlog.HistogramLogImporter;
+import com.github.yewyc.hdrlog.RecordedRun;
+import com.github.yewyc.plot.StatisticsPlot;
+import com.github.yewyc.stats.StatisticPhase;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Prints the report and the plot of a previous run from its HdrHistogram log, see --hdr-log. It doesn't run anything.
+ */
+public class WrkReport {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: WrkReport [--latency] <file.hlog>");
+            return;
+        }
+        RecordedRun run = HistogramLogImporter.load(new File(args[args.length - 1]));
+        WrkAbstract.WrkStats stats = new WrkAbstract.WrkStats(run.threads(), run.connections(), run.url(), args[0].equals("--latency"));
+        for (StatisticPhase phase : run.phases()) {
+            stats.accept(phase);
+        }
+        StatisticsPlot.plot(run.phases());
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.yewyc.cluster;
+
+import com.github.yewyc.benchmark.BenchmarkRecord;
+import com.github.yewyc.benchmark.Transport;
+import com.github.yewyc.loadgenerator.LoadStrategy;
+import com.github.yewyc.stats.StatisticPhase;
+import com.github.yewyc.wrk.WrkCluster;
+import org.jgroups.JChannel;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A distributed run on this machine: worker JVMs forked by the test, the coordinator in the JVM of the test, and the
+ * test server of the local transport in each worker.
+ */
+public class ClusterCoordinatorTest {
+
+    private static final String CONFIG = "cluster-loopback.xml";
+    private static final int WORKERS = 2;
+    private static final int RATE = 100;
+    private static final int SECONDS = 3;
+
+    @Test
+    public void theCoordinatorMergesThePhasesOfTheWorkers() throws Exception {
+        List<String> args = List.of("--timeout", "2s", "--threads", "1", "--connections", "4", "--warmup", "0",
+                "--duration", SECONDS + "s", "--rate", String.valueOf(RATE), "--transport", "local", "http://localhost/hello");
+        BenchmarkRecord record = new BenchmarkRecord(1, Duration.ofSeconds(SECONDS), RATE, 4, "http://localhost/hello",
+                Duration.ZERO, Duration.ofSeconds(2), LoadStrategy.wrk3).withTransport(Transport.local);
+
+        List<Process> workers = new ArrayList<>();
+        // a member that is not a worker, it must not be sent a run
+        try (JChannel observer = new JChannel(CONFIG);
+             ClusterCoordinator coordinator = ClusterCoordinator.connect(CONFIG)) {
+            observer.connect(ClusterCoordinator.CLUSTER_NAME);
+            for (int i = 0; i < WORKERS; i++) {
+                workers.add(fork(i));
+            }
+            List<StatisticPhase> phases = coordinator.run(record, args, WORKERS, Duration.ofSeconds(3));
+
+            StatisticPhase test = phases.get(phases.size() - 1);
+            long requests = test.getThroughput().totalSum;
+            // each worker sends its share of the rate
+            assertEquals(RATE, test.getTargetRate(), 0.001);
+            assertTrue(Math.abs(requests - RATE * SECONDS) <= RATE * SECONDS / 10, requests + " requests, expected about " + RATE * SECONDS);
+            // the generator lag of the workers is merged with their latencies
+            assertTrue(test.getSendLagHistogram().getTotalCount() > 0, "no send lag merged");
+            assertTrue(test.getHiccupHistogram().getTotalCount() > 0, "no hiccup probes merged");
+            for (Process worker : workers) {
+                assertTrue(worker.waitFor(30, TimeUnit.SECONDS), "the worker didn't stop after its run");
+                assertEquals(0, worker.exitValue());
+            }
+        } finally {
+            for (Process worker : workers) {
+                worker.destroyForcibly();
+            }
+        }
+    }
+
+    private static Process fork(int index) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), WrkCluster.class.getName(),
+                "worker", "--jgroups", CONFIG, "--runs", "1")
+                .redirectErrorStream(true)
+                .redirectOutput(new File("target", "cluster-worker-" + index + ".log"))
+                .start();
+    }
+}
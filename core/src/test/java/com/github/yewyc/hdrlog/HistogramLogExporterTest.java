@@ -0,0 +1,70 @@
+package com.github.yewyc.hdrlog;
+
+import com.github.yewyc.benchmark.BenchmarkRecord;
+import com.github.yewyc.benchmark.Phase;
+import com.github.yewyc.loadgenerator.LoadStrategy;
+import com.github.yewyc.stats.StatisticInterval;
+import com.github.yewyc.stats.StatisticPhase;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+
+import static com.github.yewyc.stats.Statistic.highestTrackableValue;
+import static com.github.yewyc.stats.Statistic.numberOfSignificantValueDigits;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HistogramLogExporterTest {
+
+    @Test
+    public void everyPhaseKeepsItsTargetRate(@TempDir File dir) throws Exception {
+        List<Phase> plan = List.of(Phase.constant("warm-up", Duration.ofSeconds(2), 100), Phase.constant("peak", Duration.ofSeconds(2), 300));
+        BenchmarkRecord record = new BenchmarkRecord(1, Duration.ofSeconds(4), 100, 2, "http://localhost/hello", null,
+                Duration.ofSeconds(2), LoadStrategy.wrk3).withPhases(plan);
+        File log = new File(dir, "run.hlog");
+        long start = System.currentTimeMillis();
+        try (HistogramLogExporter exporter = new HistogramLogExporter(log, record, false)) {
+            for (int i = 0; i < 4; i++) {
+                exporter.onInterval(plan.get(i / 2).name(), interval(start + i * 1_000L), List.of());
+            }
+        }
+
+        List<StatisticPhase> phases = HistogramLogImporter.load(log).phases();
+        assertEquals(2, phases.size());
+        assertEquals(100, phases.get(0).getTargetRate(), 0.001);
+        assertEquals(300, phases.get(1).getTargetRate(), 0.001);
+    }
+
+    @Test
+    public void aLogWithoutTheFirstByteHistogramsIsRejected(@TempDir File dir) throws Exception {
+        List<Phase> plan = List.of(Phase.constant("peak", Duration.ofSeconds(2), 100));
+        BenchmarkRecord record = new BenchmarkRecord(1, Duration.ofSeconds(2), 100, 2, "http://localhost/hello", null,
+                Duration.ofSeconds(2), LoadStrategy.wrk3).withPhases(plan);
+        File log = new File(dir, "run.hlog");
+        long start = System.currentTimeMillis();
+        try (HistogramLogExporter exporter = new HistogramLogExporter(log, record, false)) {
+            for (int i = 0; i < 2; i++) {
+                exporter.onInterval("peak", interval(start + i * 1_000L), List.of());
+            }
+        }
+        List<String> lines = Files.readAllLines(log.toPath());
+        lines.removeIf(line -> line.startsWith("Tag=peak" + HistogramLogExporter.FIRST_BYTE_SUFFIX + ","));
+        Files.write(log.toPath(), lines);
+
+        assertThrows(IOException.class, () -> HistogramLogImporter.load(log));
+    }
+
+    private static StatisticInterval interval(long startMs) {
+        Histogram latency = new Histogram(highestTrackableValue, numberOfSignificantValueDigits);
+        latency.recordValue(1_000_000);
+        latency.setStartTimeStamp(startMs);
+        latency.setEndTimeStamp(startMs + 1_000);
+        return new StatisticInterval(latency, latency.copy(), latency.copy(), 0, 0, 0, 100);
+    }
+}
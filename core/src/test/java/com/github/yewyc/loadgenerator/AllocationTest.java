@@ -0,0 +1,98 @@
+package com.github.yewyc.loadgenerator;
+
+import com.github.yewyc.stats.SequentialTimeSeriesRecorder;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The hot path of a request doesn't allocate once warmed up: the bytes allocated by the thread of the test, per
+ * request, are about 0. The HTTP decoder is left out, the responses are read as it would have decoded them.
+ */
+public class AllocationTest {
+
+    private static final int WARM_UP = 100_000;
+    private static final int REQUESTS = 100_000;
+    // a few allocations of the JIT or of the MXBean over the whole measurement, not one per request
+    private static final double MAX_BYTES_PER_REQUEST = 1;
+
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void inflightQueueDoesNotAllocate() {
+        InflightQueue queue = new InflightQueue();
+        Runnable requests = () -> {
+            for (int i = 0; i < 8; i++) {
+                queue.add(i, i, i, i % 2);
+            }
+            long sum = 0;
+            while (!queue.isEmpty()) {
+                sum += queue.peekId() + queue.peekSendTime() + queue.peekIntendedTime() + queue.peekEndpoint();
+                queue.remove();
+            }
+            assertEquals(88, sum);
+        };
+        assertAboutZeroBytesPerRequest(requests);
+    }
+
+    @Test
+    public void requestAndResponseDoNotAllocate() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        Generator generator = new Generator(channel);
+        channel.pipeline().addLast(generator);
+        SequentialTimeSeriesRecorder recorder = new SequentialTimeSeriesRecorder(Duration.ofMinutes(1));
+        recorder.start(System.nanoTime());
+        generator.startInEventLoop(Duration.ofDays(1), recorder);
+
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        Runnable request = () -> {
+            long now = System.nanoTime();
+            assertTrue(generator.executeRequest(now, now));
+            generator.flush();
+            ByteBuf sent;
+            while ((sent = channel.readOutbound()) != null) {
+                sent.release();
+            }
+            channel.pipeline().fireChannelRead(response);
+            channel.pipeline().fireChannelRead(LastHttpContent.EMPTY_LAST_CONTENT);
+        };
+        assertAboutZeroBytesPerRequest(request);
+        assertEquals(0, generator.inflightRequests());
+        channel.finishAndReleaseAll();
+    }
+
+    private static void assertAboutZeroBytesPerRequest(Runnable request) {
+        for (int i = 0; i < WARM_UP; i++) {
+            request.run();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < REQUESTS; i++) {
+            request.run();
+        }
+        double bytesPerRequest = (double) (threads.getCurrentThreadAllocatedBytes() - before) / REQUESTS;
+        assertTrue(bytesPerRequest < MAX_BYTES_PER_REQUEST, bytesPerRequest + " bytes allocated per request");
+    }
+
+    private static class Generator extends AbstractLoadGenerator {
+
+        Generator(EmbeddedChannel channel) throws Exception {
+            super(URI.create("http://localhost/hello").toURL(), channel);
+        }
+
+        @Override
+        protected void scheduleNextRequest() {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.yewyc.stats;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SequentialTimeSeriesRecorderTest {
+
+    private static final long START = 1_000 * Statistic.oneSecInNanos;
+
+    @Test
+    public void sendTimesOutOfOrderGoInTheirSecond() {
+        SequentialTimeSeriesRecorder recorder = new SequentialTimeSeriesRecorder(Duration.ofSeconds(3));
+        recorder.start(START);
+        // the responses of the connections of an event loop, recorded with their send times
+        recorder.recordValue(START + 1_500_000_000L, 1, 1, 1, true);
+        recorder.recordValue(START + 500_000_000L, 1, 1, 1, true);
+        recorder.recordValue(START + 1_200_000_000L, 1, 1, 1, true);
+        recorder.recordValue(START + 900_000_000L, 1, 1, 1, true);
+        recorder.recordValue(START + 2_100_000_000L, 1, 1, 1, true);
+
+        assertEquals(List.of(2L, 2L, 1L), counts(recorder));
+    }
+
+    @Test
+    public void sendTimesOutsideOfThePhaseGoInTheFirstAndLastSeconds() {
+        SequentialTimeSeriesRecorder recorder = new SequentialTimeSeriesRecorder(Duration.ofSeconds(3));
+        recorder.start(START);
+        recorder.recordValue(START + 1_500_000_000L, 1, 1, 1, true);
+        // sent in the previous phase
+        recorder.recordValue(START - 100_000_000L, 1, 1, 1, true);
+        // sent after the end, while the phase waits for the last responses
+        recorder.recordValue(START + 3_100_000_000L, 1, 1, 1, true);
+        recorder.recordValue(START + 1_600_000_000L, 1, 1, 1, true);
+
+        assertEquals(List.of(1L, 2L, 1L), counts(recorder));
+    }
+
+    @Test
+    public void theSendLagAndHiccupsOfASecondGrowWithWhatTheyRecord() {
+        SequentialTimeSeriesRecorder recorder = new SequentialTimeSeriesRecorder(Duration.ofSeconds(1));
+        long latency = recorder.getHistograms().get(0).getEstimatedFootprintInBytes();
+        long sendLag = recorder.getSendLagHistograms().get(0).getEstimatedFootprintInBytes();
+        long hiccups = recorder.getHiccupHistograms().get(0).getEstimatedFootprintInBytes();
+
+        assertTrue(sendLag * 10 < latency, sendLag + " bytes for the send lag, " + latency + " for the latency");
+        assertTrue(hiccups * 10 < latency, hiccups + " bytes for the hiccups, " + latency + " for the latency");
+    }
+
+    /**
+     * One recorder per event loop instead of one per connection: the same responses take event loops x seconds
+     * buckets instead of connections x seconds, and a shared bucket doesn't grow with the connections that record in it
+     */
+    @Test
+    public void recorderPerEventLoopTakesTheFootprintOfItsSecondsOnly() {
+        int connections = 16;
+        int eventLoops = 2;
+        Duration duration = Duration.ofSeconds(5);
+        List<SequentialTimeSeriesRecorder> perConnection = recorders(connections, duration);
+        List<SequentialTimeSeriesRecorder> perEventLoop = recorders(eventLoops, duration);
+
+        for (int c = 0; c < connections; c++) {
+            for (long t = 0; t < duration.toNanos(); t += 10_000_000L) {
+                long responseTime = 100_000 + c * 1_000 + t % 5_000_000;
+                perConnection.get(c).recordValue(START + t, responseTime, responseTime, responseTime, true);
+                perEventLoop.get(c % eventLoops).recordValue(START + t, responseTime, responseTime, responseTime, true);
+            }
+        }
+
+        assertEquals(totalCount(perConnection), totalCount(perEventLoop));
+        assertEquals(connections / eventLoops * footprint(perEventLoop), footprint(perConnection));
+    }
+
+    private static List<SequentialTimeSeriesRecorder> recorders(int count, Duration duration) {
+        List<SequentialTimeSeriesRecorder> recorders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SequentialTimeSeriesRecorder recorder = new SequentialTimeSeriesRecorder(duration);
+            recorder.start(START);
+            recorders.add(recorder);
+        }
+        return recorders;
+    }
+
+    private static long totalCount(List<SequentialTimeSeriesRecorder> recorders) {
+        return recorders.stream().flatMap(recorder -> recorder.getHistograms().stream()).mapToLong(Histogram::getTotalCount).sum();
+    }
+
+    // of the buckets of every second
+    private static long footprint(List<SequentialTimeSeriesRecorder> recorders) {
+        long bytes = 0;
+        for (SequentialTimeSeriesRecorder recorder : recorders) {
+            for (List<Histogram> histograms : List.of(recorder.getHistograms(), recorder.getServiceTimeHistograms(),
+                    recorder.getFirstByteHistograms(), recorder.getSendLagHistograms(), recorder.getHiccupHistograms())) {
+                for (Histogram histogram : histograms) {
+                    bytes += histogram.getEstimatedFootprintInBytes();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static List<Long> counts(SequentialTimeSeriesRecorder recorder) {
+        return recorder.getHistograms().stream().map(histogram -> histogram.getTotalCount()).toList();
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.yewyc.httphandlers;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.util.CharsetUtil;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.CONNECTION;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaderValues.CLOSE;
+import static io.netty.handler.codec.http.HttpHeaderValues.KEEP_ALIVE;
+import static io.netty.handler.codec.http.HttpHeaderValues.TEXT_PLAIN;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * The handlers of the test server, for the socket server of the http-server module and for the server in the JVM of
+ * the load generator
+ */
+public class HttpHandlers {
+
+    /**
+     * HTTP/1.1, or h2c when the client starts with the HTTP/2 preface (prior knowledge), answered by
+     * {@link DefaultHandler}
+     *
+     * @param allChannels closed by /fullGC
+     * @param answerAnyPath answers the paths it doesn't know like /hello, so a request mix can target them
+     */
+    public static void addHttpHandlers(ChannelPipeline p, ChannelGroup allChannels, boolean answerAnyPath) {
+        HttpServerCodec http1Codec = new HttpServerCodec();
+        p.addLast(new CleartextHttp2ServerUpgradeHandler(http1Codec, new HttpServerUpgradeHandler(http1Codec, protocol -> null), new Http2Initializer(allChannels, answerAnyPath)));
+        p.addLast(new HttpObjectAggregator(65536));
+        p.addLast(new DefaultHandler(allChannels, answerAnyPath));
+    }
+
+    /**
+     * Each stream of an HTTP/2 connection is converted to HTTP/1.1 objects, so the same handler answers it
+     */
+    static class Http2Initializer extends ChannelInitializer<Channel> {
+
+        private final ChannelGroup allChannels;
+        private final boolean answerAnyPath;
+
+        Http2Initializer(ChannelGroup allChannels, boolean answerAnyPath) {
+            this.allChannels = allChannels;
+            this.answerAnyPath = answerAnyPath;
+        }
+
+        @Override
+        protected void initChannel(Channel ch) {
+            // the HTTP/1.1 handlers of the connection, the streams have their own
+            ch.pipeline().remove(HttpObjectAggregator.class);
+            ch.pipeline().remove(DefaultHandler.class);
+            ch.pipeline().addLast(Http2FrameCodecBuilder.forServer().build());
+            ch.pipeline().addLast(new Http2MultiplexHandler(new ChannelInitializer<Http2StreamChannel>() {
+                @Override
+                protected void initChannel(Http2StreamChannel stream) {
+                    stream.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true));
+                    stream.pipeline().addLast(new HttpObjectAggregator(65536));
+                    stream.pipeline().addLast(new DefaultHandler(allChannels, answerAnyPath));
+                }
+            }));
+        }
+    }
+
+    /**
+     * Answers /hello with the X-Request-Id of the request and /hello2 the same after 100µs. /fullGC closes all the
+     * connections and runs a GC.
+     */
+    public static class DefaultHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        private static final ByteBuf UNKNOWN_BUF = Unpooled.unreleasableBuffer(
+                Unpooled.copiedBuffer("unknown", CharsetUtil.UTF_8));
+
+        private final ChannelGroup allChannels;
+        private final boolean answerAnyPath;
+
+        /**
+         * @param allChannels closed by /fullGC
+         * @param answerAnyPath answers the other paths like /hello, otherwise they get no answer
+         */
+        public DefaultHandler(ChannelGroup allChannels, boolean answerAnyPath) {
+            this.allChannels = allChannels;
+            this.answerAnyPath = answerAnyPath;
+        }
+
+        @Override
+        public void channelRead0(ChannelHandlerContext ctx, FullHttpRequest req) {
+
+            boolean keepAlive = HttpUtil.isKeepAlive(req);
+            String requestId = req.headers().get("X-Request-Id");
+
+            if ("/hello".equals(req.uri())) {
+                writeReponse(ctx, requestId, keepAlive);
+            } else if ("/hello2".equals(req.uri())) {
+                ctx.executor().schedule(() -> {
+                    writeReponse(ctx, requestId, keepAlive);
+                }, 100, TimeUnit.MICROSECONDS);
+            } else if ("/fullGC".equals(req.uri())) {
+                FullHttpResponse response = new DefaultFullHttpResponse(
+                        HTTP_1_1, OK,
+                        Unpooled.copiedBuffer("fullGC...\n", CharsetUtil.UTF_8)
+                );
+                response.headers().set(CONTENT_LENGTH, response.content().readableBytes());
+                response.headers().set(CONNECTION, CLOSE);
+                ctx.writeAndFlush(response).addListener(f -> {
+                    allChannels.close();
+                    System.gc();
+                });
+            } else if (answerAnyPath) {
+                writeReponse(ctx, requestId, keepAlive);
+            }
+        }
+
+        private void writeReponse(ChannelHandlerContext ctx, String requestId, boolean keepAlive) {
+            ByteBuf content;
+            if (requestId == null) {
+                content = UNKNOWN_BUF.retainedDuplicate();
+            } else {
+                content = Unpooled.copiedBuffer(requestId, CharsetUtil.UTF_8);
+            }
+
+            FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, OK, content);
+            response.headers().set(CONTENT_TYPE, TEXT_PLAIN);
+            response.headers().set(CONTENT_LENGTH, response.content().readableBytes());
+
+            if (keepAlive) {
+                response.headers().set(CONNECTION, KEEP_ALIVE);
+                ctx.writeAndFlush(response);
+            } else {
+                response.headers().set(CONNECTION, CLOSE);
+                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            ctx.flush();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+}
@@ -1,55 +1,123 @@
 package com.github.yewyc.httpserver;
 
+import com.github.yewyc.httphandlers.HttpHandlers;
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollIoHandler;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.nio.NioIoHandler;
+import io.netty.channel.socket.ServerSocketChannel;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.*;
-import io.netty.util.CharsetUtil;
+import io.netty.channel.uring.IoUring;
+import io.netty.channel.uring.IoUringIoHandler;
+import io.netty.channel.uring.IoUringServerSocketChannel;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
-import java.util.concurrent.TimeUnit;
-
-import static io.netty.handler.codec.http.HttpHeaderNames.*;
-import static io.netty.handler.codec.http.HttpHeaderValues.CLOSE;
-import static io.netty.handler.codec.http.HttpHeaderValues.TEXT_PLAIN;
-import static io.netty.handler.codec.http.HttpResponseStatus.OK;
-import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
-
 public class NettyHttpServer {
 
+    // --port 8080 --transport nio|epoll|io_uring --tls self-signed
     public static void main(String[] args) throws Exception {
-        new NettyHttpServer().start(8080);
+        int port = 8080;
+        Transport transport = Transport.nio;
+        boolean tls = false;
+        for (int i = 0; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                case "--transport" -> transport = Transport.valueOf(args[i + 1]);
+                case "--tls" -> {
+                    if (!args[i + 1].equals("self-signed")) {
+                        throw new IllegalArgumentException("Unknown TLS mode " + args[i + 1]);
+                    }
+                    tls = true;
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        new NettyHttpServer().start(port, transport, tls);
     }
 
     private static final ChannelGroup allChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
+    /**
+     * Same options as the load generator. The native transports are only available on Linux.
+     */
+    enum Transport {
+        nio, epoll, io_uring;
+
+        boolean isAvailable() {
+            return switch (this) {
+                case nio -> true;
+                case epoll -> Epoll.isAvailable();
+                case io_uring -> IoUring.isAvailable();
+            };
+        }
+
+        IoHandlerFactory ioHandlerFactory() {
+            return switch (this) {
+                case nio -> NioIoHandler.newFactory();
+                case epoll -> EpollIoHandler.newFactory();
+                case io_uring -> IoUringIoHandler.newFactory();
+            };
+        }
+
+        Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+            return switch (this) {
+                case nio -> NioServerSocketChannel.class;
+                case epoll -> EpollServerSocketChannel.class;
+                case io_uring -> IoUringServerSocketChannel.class;
+            };
+        }
+    }
+
     public void start(int port) throws Exception {
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        EventLoopGroup workerGroup = new NioEventLoopGroup(); 
+        start(port, Transport.nio);
+    }
+
+    public void start(int port, Transport transport) throws Exception {
+        start(port, transport, false);
+    }
+
+    /**
+     * @param tls https with a self-signed certificate for localhost, generated at start. The load generator doesn't
+     *            verify it.
+     */
+    public void start(int port, Transport transport, boolean tls) throws Exception {
+        if (!transport.isAvailable()) {
+            System.out.println("The transport " + transport + " is not available, falling back to nio");
+            transport = Transport.nio;
+        }
+        SslContext sslContext = tls ? selfSignedSslContext() : null;
+        EventLoopGroup bossGroup = new MultiThreadIoEventLoopGroup(1, transport.ioHandlerFactory());
+        EventLoopGroup workerGroup = new MultiThreadIoEventLoopGroup(transport.ioHandlerFactory());
 
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
-             .channel(NioServerSocketChannel.class)
+             .channel(transport.serverSocketChannelClass())
              .option(ChannelOption.SO_REUSEADDR, true) 
              .childHandler(new ChannelInitializer<SocketChannel>() {
                  @Override
                  public void initChannel(SocketChannel ch) {
                      allChannels.add(ch);
                      ChannelPipeline p = ch.pipeline();
-                     p.addLast(new HttpServerCodec());
-                     p.addLast(new HttpObjectAggregator(65536));
-                     p.addLast(new DefaultHandler());
+                     if (sslContext != null) {
+                         p.addLast(sslContext.newHandler(ch.alloc()));
+                     }
+                     HttpHandlers.addHttpHandlers(p, allChannels, false);
                  }
              });
 
-            System.out.println("Netty Server started on port " + port);
+            System.out.println("Netty Server started on port " + port + " using " + transport + (tls ? " with TLS" : ""));
 
             ChannelFuture f = b.bind(port).sync();
             f.channel().closeFuture().sync();
@@ -60,66 +128,20 @@ public class NettyHttpServer {
         }
     }
 
-    static class DefaultHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
-
-        private static final ByteBuf UNKNOWN_BUF = Unpooled.unreleasableBuffer(
-                Unpooled.copiedBuffer("unknown", CharsetUtil.UTF_8));
-
-        @Override
-        public void channelRead0(ChannelHandlerContext ctx, FullHttpRequest req) {
-
-            boolean keepAlive = HttpUtil.isKeepAlive(req);
-            String requestId = req.headers().get("X-Request-Id");
-
-            if ("/hello".equals(req.uri())) {
-                writeReponse(ctx, requestId, keepAlive);
-            } else if ("/hello2".equals(req.uri())) {
-                ctx.executor().schedule(() -> {
-                    writeReponse(ctx, requestId, keepAlive);
-                }, 100, TimeUnit.MICROSECONDS);
-            } else if ("/fullGC".equals(req.uri())) {
-                FullHttpResponse response = new DefaultFullHttpResponse(
-                        HTTP_1_1, OK,
-                        Unpooled.copiedBuffer("fullGC...\n", CharsetUtil.UTF_8)
-                );
-                response.headers().set(CONTENT_LENGTH, response.content().readableBytes());
-                response.headers().set(CONNECTION, CLOSE);
-                ctx.writeAndFlush(response).addListener(f -> {
-                    allChannels.close();
-                    System.gc();
-                });
-            }
-        }
-
-        private void writeReponse(ChannelHandlerContext ctx, String requestId, boolean keepAlive) {
-            ByteBuf content;
-            if (requestId == null) {
-                content = UNKNOWN_BUF.retainedDuplicate();
-            } else {
-                content = Unpooled.copiedBuffer(requestId, CharsetUtil.UTF_8);
-            }
-
-            FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, OK, content);
-            response.headers().set(CONTENT_TYPE, TEXT_PLAIN);
-            response.headers().set(CONTENT_LENGTH, response.content().readableBytes());
-
-            if (keepAlive) {
-                response.headers().set(CONNECTION, KEEP_ALIVE);
-                ctx.writeAndFlush(response);
-            } else {
-                response.headers().set(CONNECTION, CLOSE);
-                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
-            }
-        }
-
-        @Override
-        public void channelReadComplete(ChannelHandlerContext ctx) {
-            ctx.flush();
-        }
-
-        @Override
-        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-            ctx.close();
-        }
+    /*
+     * The JDK engine sends the TLS 1.3 session tickets right after the handshake, OpenSSL only with the first response:
+     * a client could not resume the session on its next connection. Both versions are announced with ALPN, the
+     * connection is then served as HTTP/2 when it starts with the preface, like h2c.
+     */
+    @SuppressWarnings("deprecation")
+    private static SslContext selfSignedSslContext() throws Exception {
+        SelfSignedCertificate certificate = new SelfSignedCertificate("localhost");
+        return SslContextBuilder.forServer(certificate.certificate(), certificate.privateKey())
+                .sslProvider(SslProvider.JDK)
+                .applicationProtocolConfig(new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+                        ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                        ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                        ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1))
+                .build();
     }
 }